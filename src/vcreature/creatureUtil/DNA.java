@@ -1,21 +1,29 @@
 package vcreature.creatureUtil;
 
 
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
-import jogamp.opengl.util.av.NullGLMediaPlayer;
 import vcreature.mainSimulation.MainSim;
 import vcreature.mainSimulation.Population;
 import vcreature.phenotype.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Random;
 
 /**
  * @author Justin Thomas 10/14/2015
  * A class containing the DNA description of the block.  Will have a tostring
  * method for saving the creature, getters and setters to manipulate the block.
- * Will have a deep copy method/constructor.
+ * Copies share their BlockDNAs until one of them changes a block, which is
+ * copied first (see own()), so copying for a mutation or a crossover only
+ * costs the blocks that actually change.
  * Comparable on fitness.
  */
 
@@ -23,14 +31,13 @@ public class DNA implements Comparable
 {
   private final int THIS = 0;
   private final int OTHER = 1;
-  private Random rand;
+  static Random rand = new Random();
   private int numBlocks;
   private int length;
   private BlockDNA[] blockDNAs;
   private DNA[] output;
-  private Vector3f tempVec3;
   private float fitness;
-  private String mutationSequence;
+  private long mutationPath;
   private int mutationSequenceChance; //1/mutationSequenceChance of following muationSequence
 
   /**
@@ -40,11 +47,9 @@ public class DNA implements Comparable
   {
     blockDNAs = new BlockDNA[CreatureConstants.MAX_BLOCKS];
     output = new DNA[2];
-    rand = new Random();
     length = 0;
-    tempVec3 = new Vector3f();
     fitness = 0;
-    mutationSequence = null;
+    mutationPath = MutationPath.NONE;
     mutationSequenceChance = 10;
   }
 
@@ -71,7 +76,8 @@ public class DNA implements Comparable
   }
 
   /**
-   * Construct from another DNA
+   * Construct from another DNA.  The blocks are shared with other until
+   * either DNA changes one.
    * @param other       otherDNA
    */
   public DNA(DNA other)
@@ -83,7 +89,7 @@ public class DNA implements Comparable
     {
       if(other.blockDNAs[i] != null)
       {
-        this.blockDNAs[i] = new BlockDNA(other.blockDNAs[i]);
+        this.blockDNAs[i] = other.blockDNAs[i].share();
       }
       else
       {
@@ -118,6 +124,51 @@ public class DNA implements Comparable
     numBlocks = size;
   }
 
+  /**
+   * Unpack a PackedDNA.
+   * @param packed      packed genome to build from.
+   */
+  public DNA(PackedDNA packed)
+  {
+    this();
+    numBlocks = packed.getNumBlocks();
+    length = packed.getLength();
+    fitness = packed.getFitness();
+    for(int i = 0; i < Math.min(packed.getBlockSlots(), blockDNAs.length); ++i)
+    {
+      if(packed.hasBlock(i))
+      {
+        BlockDNA bDNA = new BlockDNA(packed.getBlockID(i), packed.getParentID(i));
+        for(BlockVector type : BlockVector.values())
+        {
+          bDNA.sizeAndShape[type.ordinal()] = packed.getVector(i, type, new Vector3f());
+        }
+        bDNA.angles = packed.getAngles(i);
+        for(int n = 0; n < packed.numNeurons(i); ++n)
+        {
+          bDNA.addNeuronDNA();
+          BlockDNA.NeuronDNA nDNA = bDNA.neuronDNAs.get(n);
+          for(int r = 0; r < Neuron.TOTAL_INPUTS; ++r)
+          {
+            nDNA.inputTypes[r] = packed.getNeuronInput(i, n, r);
+            nDNA.constantValues[r] = packed.getNeuronConstant(i, n, r);
+            nDNA.blockIndex[r] = packed.getNeuronBlock(i, n, r);
+          }
+        }
+        blockDNAs[i] = bDNA;
+      }
+    }
+  }
+
+  /**
+   * Seed the random numbers used for crossover so runs can be repeated.
+   * @param seed      seed for the random number generator.
+   */
+  public static void setRandomSeed(long seed)
+  {
+    rand = new Random(seed);
+  }
+
   /**
    * Get the blockDNAs array.
    * @return
@@ -184,17 +235,19 @@ public class DNA implements Comparable
    */
   public void changeYLocations(float deltaY)
   {
-    for(BlockDNA b : blockDNAs)
+    for(int i = 0; i < blockDNAs.length; ++i)
     {
-      b.sizeAndShape[BlockVector.CENTER.ordinal()].y += deltaY;
-      b.sizeAndShape[BlockVector.JOINT_A.ordinal()].y += deltaY;
-      b.sizeAndShape[BlockVector.JOINT_B.ordinal()].y += deltaY;
+      BlockDNA b = own(i);
+      b.shiftY(BlockVector.CENTER, deltaY);
+      b.shiftY(BlockVector.JOINT_A, deltaY);
+      b.shiftY(BlockVector.JOINT_B, deltaY);
     }
   }
 
   /**
    * Get center coordinates for a block.  This vector is separate from the
-   * creature structure, but can be used to alter the DNA.
+   * creature structure, but it can be shared with copies of this DNA, so use
+   * alterVector to change it.
    * @param iD       int BlockID.
    * @return         Vector3f center coordinates, return null.
    */
@@ -211,7 +264,8 @@ public class DNA implements Comparable
   }
 
   /**
-   * Get size of a block.  Used to alter DNA
+   * Get size of a block.  Shared with copies of this DNA like getBlockCenter,
+   * so use alterVector to change it.
    * @param iD int BlockID
    * @return Vector3f size of block, return null
    */
@@ -244,17 +298,17 @@ public class DNA implements Comparable
   }
 
   /**
-   * Gets the sequence of mutations this DNA went under in Hill Climbing
-   * @return String representation of mutation sequence
+   * Gets the mutation this DNA went under in Hill Climbing
+   * @return packed MutationPath, MutationPath.NONE if there wasn't one
    */
-  public String getMutationSequence(){return mutationSequence;}
+  public long getMutationPath(){return mutationPath;}
 
   /**
-   * Sets the sequence of mutations for this DNA
+   * Sets the mutation for this DNA
    * Called from Hill Climbing
-   * @param sequence String sequence of mutations
+   * @param path packed MutationPath
    */
-  public void setMutationSequence(String sequence){mutationSequence = sequence;}
+  public void setMutationPath(long path){mutationPath = path;}
 
   /**
    * Gets the chance that Hill Climbing will follow the
@@ -316,6 +370,73 @@ public class DNA implements Comparable
     }
   }
 
+  /**
+   * Check if the creature would be valid without building it.  Places the
+   * blocks the same way initializeCreature and Creature.addBlock do, then
+   * checks the same things Block and OurCreature do when they're built: block
+   * sizes, and that no block intersects anything but its parent.  Just math,
+   * so it's cheap enough to run on every DNA before it's simulated.
+   * @return        false if building this DNA would give an invalid creature.
+   */
+  public boolean hasValidBlockPlacement()
+  {
+    //anything this doesn't understand is left for the real build to sort out
+    if(blockDNAs[0] == null)
+    {
+      return true;
+    }
+    ArrayList<OrientedBox> built = new ArrayList<>();
+    Vector3f pivotA = new Vector3f();
+    Vector3f pivotB = new Vector3f();
+    for(int i = 0; i < CreatureConstants.MAX_BLOCKS; ++i)
+    {
+      BlockDNA bDNA = blockDNAs[i];
+      if(bDNA == null)
+      {
+        continue;
+      }
+      Vector3f size = bDNA.sizeAndShape[BlockVector.SIZE.ordinal()];
+      if(!isValidBlockSize(size))
+      {
+        return false;
+      }
+      Quaternion rotation = new Quaternion(bDNA.angles == null ?
+          CreatureConstants.IDENTITY_QUATERNION : bDNA.angles);
+      if(i == 0)
+      {
+        built.add(new OrientedBox(bDNA.sizeAndShape[BlockVector.CENTER.ordinal()], size, rotation));
+        continue;
+      }
+      if(bDNA.parentID < 0 || bDNA.parentID >= built.size())
+      {
+        return true;
+      }
+      //the pivots have to meet, so the center is parent's pivot minus this
+      //block's rotated pivot
+      built.get(bDNA.parentID).localToWorld(bDNA.sizeAndShape[BlockVector.JOINT_A.ordinal()], pivotA);
+      rotation.mult(bDNA.sizeAndShape[BlockVector.JOINT_B.ordinal()], pivotB);
+      OrientedBox box = new OrientedBox(pivotA.subtractLocal(pivotB), size, rotation);
+      for(int other = 0; other < built.size(); ++other)
+      {
+        if(other != bDNA.parentID && box.intersects(built.get(other)))
+        {
+          return false;
+        }
+      }
+      built.add(box);
+    }
+    return true;
+  }
+
+  /**
+   * Same limits as the Block constructor.
+   */
+  private static boolean isValidBlockSize(Vector3f size)
+  {
+    return !(size.x < 0.5f || size.y < 0.5f || size.z < 0.5f) &&
+           !(Block.max(size) > 10 * Block.min(size));
+  }
+
   /**
    * Get length of DNA that is used for crossover. (Maybe random access?)
    * blocks * (vectors + 1) + blocks * (numNeurons * 5)
@@ -339,7 +460,7 @@ public class DNA implements Comparable
   {
     if(validateBlockIndex(id))
     {
-      blockDNAs[id].angles = Arrays.copyOf(newAngles, 3);
+      own(id).angles = Arrays.copyOf(newAngles, 3);
     }
   }
 
@@ -354,9 +475,13 @@ public class DNA implements Comparable
   {
     if(validateBlockIndex(id))
     {
-      blockDNAs[id].angles[0] = x;
-      blockDNAs[id].angles[1] = y;
-      blockDNAs[id].angles[2] = z;
+      //copied like the vectors, the old array can be shared
+      BlockDNA bDNA = own(id);
+      float[] angles = Arrays.copyOf(bDNA.angles, bDNA.angles.length);
+      angles[0] = x;
+      angles[1] = y;
+      angles[2] = z;
+      bDNA.angles = angles;
     }
   }
 
@@ -371,7 +496,7 @@ public class DNA implements Comparable
   {
     if(validateBlockIndex(id))
     {
-      blockDNAs[id].sizeAndShape[type.ordinal()] = new Vector3f(newVector);
+      own(id).sizeAndShape[type.ordinal()] = new Vector3f(newVector);
     }
   }
 
@@ -387,7 +512,7 @@ public class DNA implements Comparable
   {
     if(validateBlockIndex(id))
     {
-      blockDNAs[id].sizeAndShape[type] = new Vector3f(x, y, z);
+      own(id).sizeAndShape[type] = new Vector3f(x, y, z);
     }
   }
 
@@ -399,26 +524,67 @@ public class DNA implements Comparable
    * @param id of block that needs its joints altered
    */
   public void alterJoints(int id)
+  {
+    alterJoints(id, this);
+  }
+
+  public void alterJoints(int id, DNA dna)
   {
     if(validateBlockIndex(id))
     {
       for(int i = id; i < getNumBlocks(); i++)
       {
-        blockDNAs[i].alterJointA(this);//Maybe not needed??
-        blockDNAs[i].alterJointB(this);
+        int parentID = blockDNAs[i].parentID;
+        int blockID = blockDNAs[i].blockID;
+        if(validateBlockIndex(parentID))
+        {
+          //Maybe not needed??
+          fitJoint(i, BlockVector.JOINT_A, dna.blockDNAs[parentID].sizeAndShape[BlockVector.SIZE.ordinal()]);
+        }
+        if(validateBlockIndex(blockID))
+        {
+          fitJoint(i, BlockVector.JOINT_B, dna.blockDNAs[blockID].sizeAndShape[BlockVector.SIZE.ordinal()]);
+        }
       }
     }
   }
 
-  public void alterJoints(int id, DNA dna)
+  /**
+   * Move a joint to the same corner of a block with the given size, to line
+   * it back up after a size change or a crossover.  Joint A goes on the
+   * parent block, joint B on the block itself.  Most joints are already where
+   * they should be, so a shared block is only copied if the joint moves.
+   * @param id        block whose joint to move.
+   * @param type      JOINT_A or JOINT_B.
+   * @param size      size of the block the joint is on.
+   */
+  private void fitJoint(int id, BlockVector type, Vector3f size)
   {
-    if(validateBlockIndex(id))
+    Vector3f joint = blockDNAs[id].sizeAndShape[type.ordinal()];
+    float x = size.x * getFloatSign(joint.x);
+    float y = size.y * getFloatSign(joint.y);
+    float z = size.z * getFloatSign(joint.z);
+    if(Float.compare(x, joint.x) != 0 || Float.compare(y, joint.y) != 0 || Float.compare(z, joint.z) != 0)
     {
-      for(int i = id; i < getNumBlocks(); i++)
-      {
-        blockDNAs[i].alterJointA(dna);//Maybe not needed??
-        blockDNAs[i].alterJointB(dna);
-      }
+      own(id).sizeAndShape[type.ordinal()] = new Vector3f(x, y, z);
+    }
+  }
+
+  /**
+   * Returns -1.0f, 1.0f, or 0.0f depending on the sign of the float.
+   * Used to flip the sign of elements of the parent vector.
+   * @param f       float to get sign from
+   * @return        sign.
+   */
+  private static float getFloatSign(float f)
+  {
+    if(f != 0.0f)
+    {
+      return f/Math.abs(f);
+    }
+    else
+    {
+      return 0.0f;
     }
   }
 
@@ -434,7 +600,7 @@ public class DNA implements Comparable
   {
     if(validateNeuronIndices(blockID, neuronNum, inputNum))
     {
-      blockDNAs[blockID].neuronDNAs.get(neuronNum).inputTypes[inputNum] = type;
+      own(blockID).ownNeurons().get(neuronNum).inputTypes[inputNum] = type;
     }
   }
 
@@ -463,8 +629,8 @@ public class DNA implements Comparable
   {
     if(validateNeuronIndices(blockID, neuronNum, constNum))
     {
-      blockDNAs[blockID].neuronDNAs.get(neuronNum).constantValues[constNum]
-                                                                     = constant;
+      own(blockID).ownNeurons().get(neuronNum).constantValues[constNum]
+                                                                 = constant;
     }
   }
 
@@ -480,7 +646,7 @@ public class DNA implements Comparable
   {
     if(validateNeuronIndices(blockID, neuronNum, blockNum))
     {
-      blockDNAs[blockID].neuronDNAs.get(neuronNum).blockIndex[blockNum]
+      own(blockID).ownNeurons().get(neuronNum).blockIndex[blockNum]
           = blockIndexVal;
     }
   }
@@ -516,9 +682,49 @@ public class DNA implements Comparable
     blockDNAs[id] = new BlockDNA(id, parent);
   }
 
+  /**
+   * Add a block that was never built, for RandomDNAGenerator.  Same as
+   * addBlockToDNA(Block) but with what the block would have had passed in.
+   * @param id              id of this block.
+   * @param parent          id of parent block, -1 for the root.
+   * @param sizeAndShape    vectors in BlockVector order, null ones are left
+   *                        at 0,0,0 like a root's joints.
+   * @param angles          euler angles of the block.
+   * @param neurons         the block's neuron table.
+   */
+  public void addBlockToDNA(int id, int parent, Vector3f[] sizeAndShape, float[] angles,
+                            ArrayList<Neuron> neurons)
+  {
+    if(id < 0 || id >= blockDNAs.length)
+    {
+      return;
+    }
+    if(blockDNAs[id] != null)
+    {
+      length -= blockDNAs[id].blockDNASize;
+    }
+    BlockDNA bDNA = new BlockDNA(id, parent);
+    for(int i = 0; i < sizeAndShape.length; ++i)
+    {
+      if(sizeAndShape[i] != null)
+      {
+        bDNA.sizeAndShape[i] = new Vector3f(sizeAndShape[i]);
+      }
+    }
+    bDNA.setAngles(angles);
+    for(Neuron n : neurons)
+    {
+      bDNA.neuronDNAs.add(bDNA.new NeuronDNA(n));
+      bDNA.blockDNASize += Neuron.TOTAL_INPUTS;
+    }
+    blockDNAs[id] = bDNA;
+    length += bDNA.blockDNASize;
+    calculateNumBlocks();
+  }
+
   public void addNeuronToBlock(int blockID)
   {
-    blockDNAs[blockID].addNeuronDNA();
+    own(blockID).addNeuronDNA();
   }
 
   /**
@@ -538,20 +744,16 @@ public class DNA implements Comparable
     int i;
     for(i = 0; i < crossPoint; ++i)
     {
-      output[THIS].blockDNAs[i] = new BlockDNA(this.blockDNAs[i]);//
-      output[THIS].blockDNAs[i].alterJointA(output[THIS]);
-      output[OTHER].blockDNAs[i] = new BlockDNA(other.blockDNAs[i]);
-      output[OTHER].blockDNAs[i].alterJointA(output[OTHER]);
+      crossBlock(output[THIS], i, this.blockDNAs[i]);//
+      crossBlock(output[OTHER], i, other.blockDNAs[i]);
     }
     for(int j = i; j < otherLength; ++j)
     {
-      output[THIS].blockDNAs[j] = new BlockDNA(other.blockDNAs[j]);
-      output[THIS].blockDNAs[j].alterJointA(output[THIS]);
+      crossBlock(output[THIS], j, other.blockDNAs[j]);
     }
     for(int j = i; j < thisLength; ++j)
     {
-      output[OTHER].blockDNAs[j] = new BlockDNA(this.blockDNAs[j]);
-      output[OTHER].blockDNAs[j].alterJointA(output[OTHER]);
+      crossBlock(output[OTHER], j, this.blockDNAs[j]);
     }
     output[THIS].recalculateDNALength();
     output[THIS].calculateNumBlocks();
@@ -560,6 +762,25 @@ public class DNA implements Comparable
     return output;
   }
 
+  /**
+   * Put a parent's block into a child for singleCrossover and move its joint
+   * A to fit the child's parent block.  The block is shared with the parent
+   * unless the joint moves.  Whether the joint is moved is checked against
+   * this DNA's blocks, the child's aren't counted yet.
+   * @param child     DNA being built.
+   * @param id        block slot.
+   * @param block     the parent's block.
+   */
+  private void crossBlock(DNA child, int id, BlockDNA block)
+  {
+    child.blockDNAs[id] = block.share();
+    if(validateBlockIndex(block.parentID))
+    {
+      Vector3f parentSize = child.blockDNAs[block.parentID].sizeAndShape[BlockVector.SIZE.ordinal()];
+      child.fitJoint(id, BlockVector.JOINT_A, parentSize);
+    }
+  }
+
   /**
    * Swap every other block until one runs out of blocks
    * @param other       DNA to cross with.
@@ -581,19 +802,19 @@ public class DNA implements Comparable
     {
       if(this.blockDNAs[i] != null)
       {
-        output[THIS].blockDNAs[i] = new BlockDNA(this.blockDNAs[i]);
+        output[THIS].blockDNAs[i] = this.blockDNAs[i].share();
       }
       if(other.blockDNAs[i] != null)
       {
-        output[OTHER].blockDNAs[i] = new BlockDNA(other.blockDNAs[i]);
+        output[OTHER].blockDNAs[i] = other.blockDNAs[i].share();
       }
     }
     //while interation < shortest length swap every other block.
     for(int i = 0; i < length; i += 2)
     {
-      output[THIS].blockDNAs[i] = new BlockDNA(other.blockDNAs[i]);
+      output[THIS].blockDNAs[i] = other.blockDNAs[i].share();
       //output[THIS].blockDNAs[i].alterJointA(output[THIS]);
-      output[OTHER].blockDNAs[i] = new BlockDNA(this.blockDNAs[i]);
+      output[OTHER].blockDNAs[i] = this.blockDNAs[i].share();
       //output[OTHER].blockDNAs[i].alterJointA(output[OTHER]);
     }
     output[THIS].alterJoints(1, output[THIS]);
@@ -685,6 +906,104 @@ public class DNA implements Comparable
     return isEqual;
   }
 
+  /**
+   * SHA-256 of everything in the DNA that goes into building the creature, as a
+   * hex string.  Two DNAs with the same content hash build the same creature, so
+   * this is safe to use as a key for things like the fitness cache (hashCode()
+   * collides far too often for that).  Fitness and mutation history are not
+   * part of the hash, and -0.0 is treated the same as 0.0.
+   * @return        hex string of the content hash.
+   */
+  public String getContentHash()
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try
+    {
+      for(int i = 0; i < blockDNAs.length; ++i)
+      {
+        if(blockDNAs[i] != null)
+        {
+          out.writeInt(i);
+          blockDNAs[i].writeCanonical(out);
+        }
+      }
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      StringBuilder hex = new StringBuilder();
+      for(byte b : digest.digest(bytes.toByteArray()))
+      {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    }
+    catch(IOException | NoSuchAlgorithmException e)
+    {
+      //Can't happen, writing to memory and every JVM has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Bits of a float with -0.0 folded into 0.0 so they hash the same.
+   * @param f       float to get the bits of.
+   * @return        canonical bits.
+   */
+  private static int canonicalBits(float f)
+  {
+    return f == 0.0f ? 0 : Float.floatToIntBits(f);
+  }
+
+  /**
+   * Pack this DNA into a PackedDNA (used by PackedDNA.fromDNA).
+   * @return        packed copy.
+   */
+  PackedDNA pack()
+  {
+    //only as many block and neuron slots as the genome uses
+    int blockSlots = 0;
+    int neuronSlots = 0;
+    for(int i = 0; i < blockDNAs.length; ++i)
+    {
+      if(blockDNAs[i] != null)
+      {
+        blockSlots = i + 1;
+        neuronSlots = Math.max(neuronSlots, blockDNAs[i].neuronDNAs.size());
+      }
+    }
+    PackedDNA packed = new PackedDNA(blockSlots, neuronSlots);
+    packed.setHeader(numBlocks, length, fitness);
+    for(int i = 0; i < blockSlots; ++i)
+    {
+      BlockDNA bDNA = blockDNAs[i];
+      if(bDNA == null)
+      {
+        continue;
+      }
+      packed.putBlock(i, bDNA.blockID, bDNA.parentID, bDNA.neuronDNAs.size());
+      if(bDNA.angles != null)
+      {
+        packed.putAngles(i, bDNA.angles);
+      }
+      for(int v = 0; v < bDNA.sizeAndShape.length; ++v)
+      {
+        Vector3f vec = bDNA.sizeAndShape[v];
+        if(vec != null)
+        {
+          packed.putVector(i, v, vec.x, vec.y, vec.z);
+        }
+      }
+      for(int n = 0; n < bDNA.neuronDNAs.size(); ++n)
+      {
+        BlockDNA.NeuronDNA nDNA = bDNA.neuronDNAs.get(n);
+        for(int r = 0; r < Neuron.TOTAL_INPUTS; ++r)
+        {
+          packed.putNeuronRule(i, n, r, nDNA.inputTypes[r], nDNA.constantValues[r], nDNA.blockIndex[r]);
+        }
+      }
+    }
+    return packed;
+  }
+
   /**
    * Build a string representation of the DNA.  The string representation will
    * one int, followed by a series of floats.  All delineated by spaces, and
@@ -694,63 +1013,84 @@ public class DNA implements Comparable
   @Override
   public String toString()
   {
-    String stringOut = new String(Integer.toString(numBlocks));
-    stringOut += '\n';
+    StringBuilder stringOut = new StringBuilder();
+    stringOut.append(numBlocks);
+    stringOut.append('\n');
     for(BlockDNA b : blockDNAs)
     {
       if (b != null)
       {
-        stringOut += b.getString();
+        b.appendString(stringOut);
       }
     }
-    return stringOut;
+    return stringOut.toString();
   }
 
   /**
-   * Diff check dna blocks.  For each other block in each dna check if blocks are
-   * same or not
+   * Diff check dna blocks.  Counts, over every pair of DNAs and every block
+   * index, the pairs where the blocks aren't the same (one missing, or
+   * valuesAreSame is false).<br>
+   * Instead of comparing every pair, the blocks at each index are grouped by
+   * value in a hash map: every pair is a difference except the pairs inside a
+   * group, so this gives the same count in linear time.
    * @param pop       1d array of population
    * @return          return number of differences found.
    */
   public static int numDifferences(ArrayList<DNA> pop)
   {
-    int differences = 0;
-    int popSize = pop.size();
-    DNA current, different;
-    BlockDNA currentBlock, otherBlock;
-    boolean isNull1, isNull2, foundDifference;
-    //for each dna until second to last
-    for(int i = 0; i < popSize - 1; ++i)
-    {
-      current = pop.get(i);
-      //for each dna beyond this in the list
-      for(int j = i + 1; j < popSize; ++j)
+    long popSize = pop.size();
+    long pairs = popSize * (popSize - 1) / 2;
+    long differences = 0;
+    HashMap<BlockKey, Integer> groups = new HashMap<>();
+    for(int k = 0; k < CreatureConstants.MAX_BLOCKS; ++k)
+    {
+      groups.clear();
+      long missing = 0;
+      long samePairs = 0;
+      for(DNA dna : pop)
       {
-        different = pop.get(j);
-        //for each block
-        for(int k = 0; k < CreatureConstants.MAX_BLOCKS; ++k)
+        BlockDNA block = dna.getBlockDNA(k);
+        if(block == null)
         {
-          foundDifference = false;
-          //check if same
-          currentBlock = current.getBlockDNA(k);
-          otherBlock = different.getBlockDNA(k);
-          if((currentBlock == null && otherBlock != null) ||
-              currentBlock != null && otherBlock == null)
-          {
-            foundDifference = true;
-          }
-          if(!foundDifference && currentBlock != null)
-          {
-            foundDifference = !currentBlock.valuesAreSame(otherBlock);
-          }
-          if(foundDifference)
-          {
-            differences++;
-          }
+          samePairs += missing++;
+        }
+        else if(block.canMatch())
+        {
+          //a block with n others like it already makes n more same pairs
+          samePairs += groups.merge(new BlockKey(block), 1, Integer::sum) - 1;
         }
+        //else it isn't the same as anything, not even a copy of itself
       }
+      differences += pairs - samePairs;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, differences);
+  }
+
+  /**
+   * BlockDNA with equals and hashCode going by valuesAreSame.
+   */
+  private static class BlockKey
+  {
+    private final BlockDNA block;
+    private final int hash;
+
+    BlockKey(BlockDNA block)
+    {
+      this.block = block;
+      this.hash = block.valuesHash();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      return o instanceof BlockKey && hash == ((BlockKey) o).hash && block.valuesAreSame(((BlockKey) o).block);
     }
-    return differences;
   }
 
   /**
@@ -855,16 +1195,38 @@ public class DNA implements Comparable
       }
     }
 
-    for (BlockDNA b : blockDNAs)
+    if (lowestPoint == 0)
     {
-      if (b!=null)
+      //already off the floor, don't copy any shared blocks
+      return;
+    }
+    for (int i = 0; i < blockDNAs.length; ++i)
+    {
+      if (blockDNAs[i]!=null)
       {
         //subtract the lowest point all the block centers
-        b.subtractFromCenterY(lowestPoint);
+        own(i).subtractFromCenterY(lowestPoint);
       }
     }
   }
 
+  /**
+   * Get a block that can be changed, copying it first if it's shared with
+   * another DNA.  Blocks never change their vectors or angles in place, they
+   * put in new ones, so the copy shares those and only gets its own neurons
+   * once one of them changes (see BlockDNA.ownNeurons()).
+   * @param id      block slot, must have a block.
+   * @return        this DNA's own block.
+   */
+  private BlockDNA own(int id)
+  {
+    if(blockDNAs[id].shared)
+    {
+      blockDNAs[id] = new BlockDNA(blockDNAs[id]);
+    }
+    return blockDNAs[id];
+  }
+
 
   //============================Nested BlockDNA================================
   /**
@@ -891,6 +1253,10 @@ public class DNA implements Comparable
     private float[] angles;
     private ArrayList<NeuronDNA> neuronDNAs;
     private int blockDNASize = CreatureConstants.BLOCK_DNA_BASE_SIZE;
+    //true once more than one DNA has it, then it's never changed again
+    private boolean shared = false;
+    //true if neuronDNAs still belongs to the block this one was copied from
+    private boolean sharesNeurons = false;
 
     /**
      * Default constructor creates a blank block.
@@ -932,25 +1298,15 @@ public class DNA implements Comparable
      */
     public BlockDNA(BlockDNA other)
     {
-      this();
       this.blockID = other.blockID;
       this.parentID = other.parentID;
-      for(int i = 0; i < NUM_VECTORS; ++i)
-      {
-        if(other.sizeAndShape[i] != null)
-        {
-          this.sizeAndShape[i] = new Vector3f(other.sizeAndShape[i]);
-        }
-        else
-        {
-          this.sizeAndShape[i] = null;
-        }
-      }
-      this.angles = Arrays.copyOf(other.angles, other.angles.length);
-      for(int i = 0; i < other.neuronDNAs.size(); ++i)
-      {
-        this.neuronDNAs.add(new NeuronDNA(other.neuronDNAs.get(i)));
-      }
+      this.blockDNASize = other.blockDNASize;
+      //the vectors and angles are replaced rather than changed, so just the
+      //array holding them is copied
+      this.sizeAndShape = Arrays.copyOf(other.sizeAndShape, other.sizeAndShape.length);
+      this.angles = other.angles;
+      this.neuronDNAs = other.neuronDNAs;
+      this.sharesNeurons = true;
     }
 
     /**
@@ -976,43 +1332,31 @@ public class DNA implements Comparable
      */
     public void subtractFromCenterY(float lowestPoint)
     {
-      sizeAndShape[0].y -= lowestPoint;
+      shiftY(BlockVector.CENTER, -lowestPoint);
     }
 
     /**
-     * Crossover method to adjust joint A to correct placement.  This will alter
-     * the jointA position (placement in relation to the parent block.
+     * Move one of the vectors up or down.  Puts in a new vector, the old one
+     * might be shared with a copy of this block.
+     * @param type      vector to move.
+     * @param deltaY    amount to add to y.
      */
-    public void alterJointA(DNA dna)
+    public void shiftY(BlockVector type, float deltaY)
     {
-      int parentIndex = parentID;
-      if(validateBlockIndex(parentIndex))
-      {
-        Vector3f thisJointA = sizeAndShape[BlockVector.JOINT_A.ordinal()];
-        Vector3f parentSize = dna.blockDNAs[parentIndex].sizeAndShape[BlockVector.SIZE.ordinal()];
-        tempVec3 = new Vector3f(getFloatSign(thisJointA.x),
-                                getFloatSign(thisJointA.y),
-                                getFloatSign(thisJointA.z));
-        sizeAndShape[BlockVector.JOINT_A.ordinal()] = parentSize.mult(tempVec3);
-      }
+      Vector3f vector = sizeAndShape[type.ordinal()];
+      sizeAndShape[type.ordinal()] = new Vector3f(vector.x, vector.y + deltaY, vector.z);
     }
 
     /**
-     * Adjusts joint B of the block to align after size has been mutated.
-     * @param dna containing the block whose B joint is being altered
+     * Mark the block as used by another DNA too, so neither changes it.
+     * @return        this block.
      */
-    public void alterJointB(DNA dna)
+    public BlockDNA share()
     {
-      if(validateBlockIndex(blockID))
-      {
-        Vector3f thisJointB = sizeAndShape[BlockVector.JOINT_B.ordinal()];
-        Vector3f ourSize = dna.blockDNAs[blockID].sizeAndShape[BlockVector.SIZE.ordinal()];
-        tempVec3 = new Vector3f(getFloatSign(thisJointB.x),
-                getFloatSign(thisJointB.y),
-                getFloatSign(thisJointB.z));
-        sizeAndShape[BlockVector.JOINT_B.ordinal()] = ourSize.mult(tempVec3);
-      }
+      shared = true;
+      return this;
     }
+
     /**
      * Get a copy of the creatures angle array.
      * @param angleArr        float array representing rotation quaternion.
@@ -1048,59 +1392,112 @@ public class DNA implements Comparable
      */
     public void addNeuronDNA()
     {
-      neuronDNAs.add(new NeuronDNA());
+      ownNeurons().add(new NeuronDNA());
+    }
+
+    /**
+     * Get the neurons to change them, copying them first if they're still
+     * shared with the block this one was copied from.
+     * @return        this block's own neurons.
+     */
+    public ArrayList<NeuronDNA> ownNeurons()
+    {
+      if(sharesNeurons)
+      {
+        ArrayList<NeuronDNA> copies = new ArrayList<>(neuronDNAs.size());
+        for(NeuronDNA nDNA : neuronDNAs)
+        {
+          copies.add(new NeuronDNA(nDNA));
+        }
+        neuronDNAs = copies;
+        sharesNeurons = false;
+      }
+      return neuronDNAs;
     }
 
 
     /**
-     * Get string representation of the block.
-     * @return string representation of the block
+     * Add the string representation of the block to a StringBuilder.
+     * @param bString       StringBuilder to add to.
      */
-    public String getString()
+    public void appendString(StringBuilder bString)
     {
-      String bString = new String();
-      bString += blockID;
-      bString += '\n';
-      bString += parentID;
-      bString += '\n';
+      bString.append(blockID);
+      bString.append('\n');
+      bString.append(parentID);
+      bString.append('\n');
       for (float f : angles)
       {
-        bString += f;
-        bString += ' ';
+        bString.append(f);
+        bString.append(' ');
       }
-      bString += '\n';
+      bString.append('\n');
       for (Vector3f v : sizeAndShape)
       {
         if (v != null)
         {
-          bString += v.x;
-          bString += ' ';
-          bString += v.y;
-          bString += ' ';
-          bString += v.z;
-          bString += ' ';
+          bString.append(v.x);
+          bString.append(' ');
+          bString.append(v.y);
+          bString.append(' ');
+          bString.append(v.z);
+          bString.append(' ');
         }
         else
         {
-          bString += "null";
+          bString.append("null");
         }
-        bString += '\n';
+        bString.append('\n');
       }
       if(neuronDNAs != null)
       {
-        bString += neuronDNAs.size();
-        bString += '\n';
+        bString.append(neuronDNAs.size());
+        bString.append('\n');
         for(NeuronDNA nDNA : neuronDNAs)
         {
-          bString += nDNA.getString();
+          nDNA.appendString(bString);
         }
       }
       else
       {
-        bString += 0;
+        bString.append(0);
+      }
+    }
+
+    /**
+     * Write the values that build this block in a fixed order for the content
+     * hash.  Nulls get a flag so they can't look like zeros.
+     * @param out       stream to write to.
+     * @throws IOException
+     */
+    public void writeCanonical(DataOutputStream out) throws IOException
+    {
+      out.writeInt(blockID);
+      out.writeInt(parentID);
+      out.writeBoolean(angles != null);
+      if(angles != null)
+      {
+        out.writeInt(angles.length);
+        for(float f : angles)
+        {
+          out.writeInt(canonicalBits(f));
+        }
+      }
+      for(Vector3f v : sizeAndShape)
+      {
+        out.writeBoolean(v != null);
+        if(v != null)
+        {
+          out.writeInt(canonicalBits(v.x));
+          out.writeInt(canonicalBits(v.y));
+          out.writeInt(canonicalBits(v.z));
+        }
+      }
+      out.writeInt(neuronDNAs.size());
+      for(NeuronDNA nDNA : neuronDNAs)
+      {
+        nDNA.writeCanonical(out);
       }
-      //bString += '\n';
-      return bString;
     }
 
     /**
@@ -1131,6 +1528,51 @@ public class DNA implements Comparable
       return result;
     }
 
+    /**
+     * Hash of the values valuesAreSame looks at, so blocks that are the same
+     * always have the same hash.  Vectors are compared with Float.compare and
+     * neuron constants with ==, so -0.0 only matches 0.0 in the neurons.
+     * @return      int based on members.
+     */
+    public int valuesHash()
+    {
+      int result = 31 * blockID + parentID;
+      for(Vector3f v : sizeAndShape)
+      {
+        result = 31 * result + (v == null ? 0 : v.hashCode());
+      }
+      for(NeuronDNA nDNA : neuronDNAs)
+      {
+        for(int i = 0; i < Neuron.TOTAL_INPUTS; ++i)
+        {
+          result = 31 * result + (nDNA.inputTypes[i] == null ? -1 : nDNA.inputTypes[i].ordinal());
+          result = 31 * result + Float.floatToIntBits(nDNA.constantValues[i] + 0.0f);
+          result = 31 * result + nDNA.blockIndex[i];
+        }
+      }
+      return result;
+    }
+
+    /**
+     * A NaN neuron constant is never == anything, so a block with one is never
+     * the same as another block.
+     * @return      false if valuesAreSame is always false for this block.
+     */
+    public boolean canMatch()
+    {
+      for(NeuronDNA nDNA : neuronDNAs)
+      {
+        for(float f : nDNA.constantValues)
+        {
+          if(Float.isNaN(f))
+          {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
     /**
      * Check values to make sure they are the same.
      * @param other
@@ -1166,24 +1608,6 @@ public class DNA implements Comparable
       return true;
     }
 
-    /**
-     * Returns -1.0f, 1.0f, or 0.0f depending on the sign of the float.
-     * Used to flip the sign of elements of the parent vector.
-     * @param f       float to get sign from
-     * @return        sign.
-     */
-    private float getFloatSign(float f)
-    {
-      if(f != 0.0f)
-      {
-        return f/Math.abs(f);
-      }
-      else
-      {
-        return 0.0f;
-      }
-    }
-
     //==============Nested NeuronDNA===========================================
     /**
      * Nested class containing Neuron DNA, one per neuron per block.
@@ -1232,29 +1656,42 @@ public class DNA implements Comparable
       }
 
       /**
-       * String representation of neuron dna.
-       * @return        string with neuron rules.
+       * Add the neuron rules to a StringBuilder.
+       * @param nString       StringBuilder to add to.
        */
-      public String getString()
+      public void appendString(StringBuilder nString)
       {
-        String nString = new String();
         for(int i = 0; i < NUM_RULES; ++i)
         {
           if(inputTypes[i] != null)
           {
-            nString += inputTypes[i].ordinal();
+            nString.append(inputTypes[i].ordinal());
           }
           else
           {
-            nString += "null";
+            nString.append("null");
           }
-          nString += ' ';
-          nString += constantValues[i];
-          nString += ' ';
-          nString += blockIndex[i];
-          nString += '\n';
+          nString.append(' ');
+          nString.append(constantValues[i]);
+          nString.append(' ');
+          nString.append(blockIndex[i]);
+          nString.append('\n');
+        }
+      }
+
+      /**
+       * Write the neuron rules for the content hash.
+       * @param out       stream to write to.
+       * @throws IOException
+       */
+      public void writeCanonical(DataOutputStream out) throws IOException
+      {
+        for(int i = 0; i < NUM_RULES; ++i)
+        {
+          out.writeInt(inputTypes[i] == null ? -1 : inputTypes[i].ordinal());
+          out.writeInt(canonicalBits(constantValues[i]));
+          out.writeInt(blockIndex[i]);
         }
-        return nString;
       }
 
       /**
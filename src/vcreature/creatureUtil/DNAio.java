@@ -2,40 +2,53 @@ package vcreature.creatureUtil;
 
 import com.google.common.collect.Iterables;
 import com.jme3.math.Vector3f;
-import sun.applet.Main;
+import vcreature.mainSimulation.CheckpointWriter;
 import vcreature.mainSimulation.MainSim;
 import vcreature.mainSimulation.Population;
-import vcreature.phenotype.Neuron;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Scanner;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Justin Thomas(jthomas105@unm.edu)
+ * Populations can be saved as text (one number per line, see DNA.toString) or
+ * in a binary format:
+ * magic "VCPO", int version, int number of genomes, then for each genome an
+ * int length followed by that many bytes of PackedDNA.getBuffer().
+ * readPopulation works out which one a file is.
  */
 public class DNAio
 {
+  public static final int BINARY_MAGIC = 0x5643504F; //"VCPO"
+  public static final int BINARY_VERSION = 1;
+  static final int BINARY_HEADER_BYTES = 3 * 4;
+
   /**
-   * Take an array of the population's DNA and write to a file.
+   * Take an array of the population's DNA and write to a file.  Writes the
+   * binary format if MainSim.binary_output is set.
    * @param population        Array List of DNA objects.
    */
   public static void writePopulation(Population population)
   {
-    StringBuilder outString = new StringBuilder();
-    for(DNA dna : population.getBestDNAs())
-    {
-      outString.append(dna);
-    }
-    //System.out.println("outString" + outString);
     try
     {
-      FileWriter writer = new FileWriter(MainSim.output_file);
-      writer.write(outString.toString());
-      writer.close();
+      if(MainSim.binary_output)
+      {
+        writeBinary(population.getBestDNAs(), MainSim.output_file);
+      }
+      else
+      {
+        writeText(population.getBestDNAs(), MainSim.output_file);
+      }
     }
     catch(IOException e)
     {
@@ -43,6 +56,17 @@ public class DNAio
     }
   }
 
+  /**
+   * Write DNAs in the text format.
+   * @param dnas      DNAs to write.
+   * @param f         file to write to, replaced if it's there.
+   * @throws IOException
+   */
+  public static void writeText(List<DNA> dnas, File f) throws IOException
+  {
+    writeBuffer(encodeText(dnas), f);
+  }
+
   /**
    * Take a creature's DNA and write to a file
    * @param bestCreature  creature you want to save
@@ -65,100 +89,210 @@ public class DNAio
 
 
   /**
-   * Create DNAs from file
+   * Create DNAs from file.  The file is read a genome at a time and broken
+   * genomes are skipped.
    * @param f                 File input.
    * @param population        Population arraylist to fill.
    */
   public static void readPopulation(File f, Population population)
   {
-    try
+    try(PopulationReader reader = new PopulationReader(f))
     {
-      parseInput(f, population);
+      readAll(reader, population);
     }
-    catch (IOException e)
+    catch(IOException | UncheckedIOException e)
     {
       System.out.println("Population read error");
     }
   }
 
   /**
-   * Helper method that parses the DNA input file.  Very brittle, files must be
-   * in the exact format that writePopulation outputs.
-   * Goes line by line through the input file instantiating and filling in DNA
-   * pieces in the order that they arrive.
-   * @param f               file to parse
-   * @param population      population DNA array to fill.
-   * @return
-   * @throws IOException    IOExceptions handled in readPopulation
+   * Create DNAs from the best genomes in a file, see PopulationReader.readTop.
+   * @param f                 File input.
+   * @param population        Population arraylist to fill.
+   * @param top               most genomes to read.
    */
-  private static boolean parseInput(File f, Population population) throws IOException
-  {
-    int numBlocks, numNeurons;
-    int id, parentID, neuronInputType, neuronBlockID;
-    float x, y, z, neuronConstant;
-    Scanner s = new Scanner(f);
-    //while more DNAs
-    while(s.hasNext())
-    {
-      //first line int numblocks
-      //make DNA
-      if (s.hasNextInt())
+  public static void readPopulation(File f, Population population, int top)
+  {
+    try
+    {
+      for(DNA dna : PopulationReader.readTop(f, top))
       {
-
-        //for numblocks
-        numBlocks = s.nextInt();
-        DNA dnaIn = new DNA(numBlocks);
-        population.add(dnaIn);
-
-        for (int i = 0; i < numBlocks; ++i)
-        {
-          //make blockDNA
-          //set ID (int)
-          id = s.nextInt();
-          //set parent id (int)
-          parentID = s.nextInt();
-          dnaIn.addBlockToDNA(id, parentID);
-          //Get angle array
-          x = s.nextFloat();
-          y = s.nextFloat();
-          z = s.nextFloat();
-          dnaIn.alterAngles(x, y, z, i);
-          //set vector array (float 3-tuple) * 6
-          for(int j = 0; j < 6; ++j)
-          {
-            x = s.nextFloat();
-            y = s.nextFloat();
-            z = s.nextFloat();
-            dnaIn.alterVector(x, y, z, i, j);
-          }
-
-          //int numNeurons (int)
-          numNeurons = s.nextInt();
-          //for numNeurons
-          for(int j = 0; j < numNeurons; ++j)
-          {
-            dnaIn.addNeuronToBlock(i);
-            //set neuron rules(5) (float, int)
-            for(int k = 0; k < Neuron.TOTAL_INPUTS; ++k)
-            {
-              neuronInputType = s.nextInt();
-              neuronConstant = s.nextFloat();
-              neuronBlockID = s.nextInt();
-              dnaIn.alterNeuronInput(i, j, k, neuronInputType);
-              dnaIn.alterNeuronConstant(i, j, k, neuronConstant);
-              dnaIn.alterNeuronBlock(i, j, k, neuronBlockID);
-            }
-          }
-          //nextBlock
-        }
-        //if more, next line is new numblocks.
+        population.add(dna);
       }
-      else
+    }
+    catch(IOException | UncheckedIOException e)
+    {
+      System.out.println("Population read error");
+    }
+  }
+
+  /**
+   * Write DNAs in the binary format.  Everything is packed into one buffer
+   * and goes out through a FileChannel.
+   * @param dnas      DNAs to write.
+   * @param f         file to write to, replaced if it's there.
+   * @throws IOException
+   */
+  public static void writeBinary(List<DNA> dnas, File f) throws IOException
+  {
+    writeBuffer(encodeBinary(pack(dnas)), f);
+  }
+
+  /**
+   * Queue the population to be written by a CheckpointWriter, in whichever
+   * format writePopulation would use.  The DNAs are packed right away, so the
+   * population can be changed as soon as this returns.
+   * @param writer          background writer.
+   * @param population      population to save.
+   */
+  public static void checkpointPopulation(CheckpointWriter writer, Population population)
+  {
+    List<PackedDNA> snapshot = pack(population.getBestDNAs());
+    if(MainSim.binary_output)
+    {
+      writer.submit(MainSim.output_file, () -> encodeBinary(snapshot));
+    }
+    else
+    {
+      writer.submit(MainSim.output_file, () -> encodeText(unpack(snapshot)));
+    }
+  }
+
+  /**
+   * Queue a creature's DNA to be written by a CheckpointWriter, like
+   * writeSingleCreature.
+   * @param writer          background writer.
+   * @param bestCreature    creature you want to save, nothing is written if
+   *                        it's null.
+   */
+  public static void checkpointSingleCreature(CheckpointWriter writer, DNA bestCreature)
+  {
+    if(bestCreature == null)
+    {
+      return;
+    }
+    List<PackedDNA> snapshot = pack(Collections.singletonList(bestCreature));
+    writer.submit(MainSim.output_best_creature, () -> encodeText(unpack(snapshot)));
+  }
+
+  /**
+   * Text format of some DNAs.
+   * @param dnas      DNAs to encode.
+   * @return          buffer ready to be written.
+   */
+  public static ByteBuffer encodeText(List<DNA> dnas)
+  {
+    StringBuilder outString = new StringBuilder();
+    for(DNA dna : dnas)
+    {
+      outString.append(dna);
+    }
+    return ByteBuffer.wrap(outString.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Binary format of some packed DNAs.
+   * @param genomes     genomes to encode.
+   * @return            buffer ready to be written.
+   */
+  public static ByteBuffer encodeBinary(List<PackedDNA> genomes)
+  {
+    ByteBuffer[] buffers = new ByteBuffer[genomes.size()];
+    int size = BINARY_HEADER_BYTES;
+    for(int i = 0; i < buffers.length; ++i)
+    {
+      buffers[i] = genomes.get(i).getBuffer();
+      size += 4 + buffers[i].remaining();
+    }
+    ByteBuffer out = ByteBuffer.allocate(size);
+    out.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putInt(buffers.length);
+    for(ByteBuffer genome : buffers)
+    {
+      out.putInt(genome.remaining());
+      out.put(genome);
+    }
+    out.flip();
+    return out;
+  }
+
+  private static List<PackedDNA> pack(List<DNA> dnas)
+  {
+    ArrayList<PackedDNA> packed = new ArrayList<>(dnas.size());
+    for(DNA dna : dnas)
+    {
+      packed.add(PackedDNA.fromDNA(dna));
+    }
+    return packed;
+  }
+
+  private static List<DNA> unpack(List<PackedDNA> genomes)
+  {
+    ArrayList<DNA> dnas = new ArrayList<>(genomes.size());
+    for(PackedDNA genome : genomes)
+    {
+      dnas.add(genome.toDNA());
+    }
+    return dnas;
+  }
+
+  private static void writeBuffer(ByteBuffer contents, File f) throws IOException
+  {
+    try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      while(contents.hasRemaining())
       {
-        s.next();
+        channel.write(contents);
       }
     }
-    s.close();
-    return true;
+  }
+
+  /**
+   * Read DNAs in the binary format into a population, a genome at a time
+   * through a PopulationReader.  Broken genomes are skipped and reported.
+   * @param f               file to read.
+   * @param population      population to add the DNAs to.
+   * @throws IOException    if it isn't a binary population file.
+   */
+  public static void readBinary(File f, Population population) throws IOException
+  {
+    if(!isBinary(f))
+    {
+      throw new IOException(f + " is not a binary population file");
+    }
+    try(PopulationReader reader = new PopulationReader(f))
+    {
+      readAll(reader, population);
+    }
+    catch(UncheckedIOException e)
+    {
+      throw e.getCause();
+    }
+  }
+
+  private static void readAll(PopulationReader reader, Population population)
+  {
+    while(reader.hasNext())
+    {
+      population.add(reader.next());
+    }
+    reader.report();
+  }
+
+  /**
+   * Check if a file starts with the binary population magic number.
+   * @param f       file to check.
+   * @return        true if it's a binary population file.
+   * @throws IOException
+   */
+  public static boolean isBinary(File f) throws IOException
+  {
+    try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+    {
+      ByteBuffer magic = ByteBuffer.allocate(4);
+      while(magic.hasRemaining() && channel.read(magic) >= 0);
+      return !magic.hasRemaining() && magic.getInt(0) == BINARY_MAGIC;
+    }
   }
 }
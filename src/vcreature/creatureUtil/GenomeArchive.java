@@ -0,0 +1,313 @@
+package vcreature.creatureUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Read only archive of packed genomes that can jump straight to genome #k.
+ * The file is memory mapped and get() wraps the mapped bytes with
+ * PackedDNA.wrap, so nothing is parsed or copied until a genome is turned
+ * back into a DNA.<br><br>
+ *
+ * Layout (big endian):<br>
+ * magic "VCAR", int version, int number of genomes, long offset of the index,
+ * then the genomes back to back (PackedDNA.getBuffer() bytes), then the index:
+ * a long offset and an int length for every genome.<br><br>
+ *
+ * Binary population files (see DNAio) can be opened too, their index is
+ * built by hopping over the length in front of each genome.  Text files have
+ * to be converted first:<br>
+ * Usage: GenomeArchive population_file archive_file
+ */
+public class GenomeArchive implements Closeable
+{
+  public static final int ARCHIVE_MAGIC = 0x56434152; //"VCAR"
+  public static final int ARCHIVE_VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+  private static final int INDEX_ENTRY_BYTES = 8 + 4;
+  //A mapping can't be bigger than 2GB, so big files are mapped in pieces
+  private static final int SEGMENT_SHIFT = 30;
+
+  private final File file;
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long[] offsets;
+  private final int[] lengths;
+
+  private GenomeArchive(File file, FileChannel channel, long[] offsets, int[] lengths) throws IOException
+  {
+    this.file = file;
+    this.channel = channel;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    long size = channel.size();
+    segments = new MappedByteBuffer[(int) ((size + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT)];
+    for(int i = 0; i < segments.length; ++i)
+    {
+      long start = (long) i << SEGMENT_SHIFT;
+      segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_SHIFT, size - start));
+    }
+  }
+
+  /**
+   * Open an archive or a binary population file.
+   * @param f               file to open.
+   * @return                the archive, close it when done.
+   * @throws IOException    if it's neither or it's broken.
+   */
+  public static GenomeArchive open(File f) throws IOException
+  {
+    FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+    try
+    {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while(header.hasRemaining() && channel.read(header) >= 0);
+      header.flip();
+      int magic = header.remaining() >= 4 ? header.getInt(0) : 0;
+      if(magic == ARCHIVE_MAGIC && header.remaining() == HEADER_BYTES)
+      {
+        return openArchive(f, channel, header);
+      }
+      if(magic == DNAio.BINARY_MAGIC)
+      {
+        return openBinary(f, channel);
+      }
+      throw new IOException(f + " is not a genome archive or a binary population file");
+    }
+    catch(IOException | RuntimeException e)
+    {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static GenomeArchive openArchive(File f, FileChannel channel, ByteBuffer header) throws IOException
+  {
+    int version = header.getInt(4);
+    if(version != ARCHIVE_VERSION)
+    {
+      throw new IOException(f + " has version " + version + ", can only read version " + ARCHIVE_VERSION);
+    }
+    int count = header.getInt(8);
+    long indexOffset = header.getLong(12);
+    long size = channel.size();
+    if(count < 0 || indexOffset < HEADER_BYTES || indexOffset + (long) count * INDEX_ENTRY_BYTES > size)
+    {
+      throw new IOException(f + " has a broken index");
+    }
+    ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) count * INDEX_ENTRY_BYTES);
+    long[] offsets = new long[count];
+    int[] lengths = new int[count];
+    for(int i = 0; i < count; ++i)
+    {
+      offsets[i] = index.getLong();
+      lengths[i] = index.getInt();
+      if(offsets[i] < HEADER_BYTES || lengths[i] < 0 || offsets[i] + lengths[i] > indexOffset)
+      {
+        throw new IOException("Genome " + i + " in " + f + " is outside the file");
+      }
+    }
+    return new GenomeArchive(f, channel, offsets, lengths);
+  }
+
+  private static GenomeArchive openBinary(File f, FileChannel channel) throws IOException
+  {
+    ByteBuffer header = ByteBuffer.allocate(DNAio.BINARY_HEADER_BYTES);
+    channel.read(header, 0);
+    int version = header.getInt(4);
+    if(version != DNAio.BINARY_VERSION)
+    {
+      throw new IOException(f + " has version " + version + ", can only read version " + DNAio.BINARY_VERSION);
+    }
+    int count = header.getInt(8);
+    long size = channel.size();
+    long[] offsets = new long[Math.max(0, count)];
+    int[] lengths = new int[offsets.length];
+    long position = DNAio.BINARY_HEADER_BYTES;
+    ByteBuffer length = ByteBuffer.allocate(4);
+    int found = 0;
+    while(found < offsets.length && position + 4 <= size)
+    {
+      length.clear();
+      channel.read(length, position);
+      int bytes = length.getInt(0);
+      if(bytes < 0 || position + 4 + bytes > size)
+      {
+        break;
+      }
+      offsets[found] = position + 4;
+      lengths[found] = bytes;
+      found++;
+      position += 4 + bytes;
+    }
+    if(found < offsets.length)
+    {
+      System.out.println(f + " ends after " + found + " of " + count + " genomes");
+    }
+    return new GenomeArchive(f, channel, Arrays.copyOf(offsets, found), Arrays.copyOf(lengths, found));
+  }
+
+  /**
+   * Write genomes to an archive.  They're packed and written one at a time,
+   * so they can come straight from a PopulationReader.
+   * @param dnas            genomes to write.
+   * @param f               file to write to, replaced if it's there.
+   * @return                number of genomes written.
+   * @throws IOException
+   */
+  public static int write(Iterator<DNA> dnas, File f) throws IOException
+  {
+    long[] offsets = new long[1024];
+    int[] lengths = new int[1024];
+    int count = 0;
+    try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      long position = HEADER_BYTES;
+      channel.position(position);
+      while(dnas.hasNext())
+      {
+        ByteBuffer genome = dnas.next().pack().getBuffer();
+        if(count == offsets.length)
+        {
+          offsets = Arrays.copyOf(offsets, count * 2);
+          lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        offsets[count] = position;
+        lengths[count] = genome.remaining();
+        count++;
+        position += genome.remaining();
+        writeFully(channel, genome);
+      }
+
+      ByteBuffer index = ByteBuffer.allocate(count * INDEX_ENTRY_BYTES);
+      for(int i = 0; i < count; ++i)
+      {
+        index.putLong(offsets[i]).putInt(lengths[i]);
+      }
+      index.flip();
+      writeFully(channel, index);
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putInt(ARCHIVE_MAGIC).putInt(ARCHIVE_VERSION).putInt(count).putLong(position);
+      header.flip();
+      channel.position(0);
+      writeFully(channel, header);
+    }
+    return count;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer contents) throws IOException
+  {
+    while(contents.hasRemaining())
+    {
+      channel.write(contents);
+    }
+  }
+
+  /**
+   * @return        number of genomes in the archive.
+   */
+  public int size()
+  {
+    return offsets.length;
+  }
+
+  /**
+   * Genome #k, reading straight from the mapped file.
+   * @param k       index of the genome.
+   * @return        the genome, read straight out of the file.
+   * @throws IllegalArgumentException if the genome is broken.
+   */
+  public PackedDNA getPacked(int k)
+  {
+    return PackedDNA.wrap(bytes(k));
+  }
+
+  /**
+   * Genome #k as a DNA.
+   * @param k       index of the genome.
+   * @return        a new DNA.
+   * @throws IllegalArgumentException if the genome is broken.
+   */
+  public DNA get(int k)
+  {
+    return getPacked(k).toDNA();
+  }
+
+  /**
+   * Stored fitness of genome #k, without reading the rest of it.
+   * @param k       index of the genome.
+   * @return        fitness saved with the genome.
+   */
+  public float getFitness(int k)
+  {
+    return PackedDNA.peekFitness(bytes(k));
+  }
+
+  private ByteBuffer bytes(int k)
+  {
+    if(k < 0 || k >= offsets.length)
+    {
+      throw new IndexOutOfBoundsException("Genome " + k + " of " + offsets.length);
+    }
+    long offset = offsets[k];
+    int length = lengths[k];
+    int segment = (int) (offset >>> SEGMENT_SHIFT);
+    int start = (int) (offset & ((1L << SEGMENT_SHIFT) - 1));
+    if(start + length <= segments[segment].capacity())
+    {
+      ByteBuffer genome = segments[segment].duplicate();
+      genome.position(start).limit(start + length);
+      return genome.slice();
+    }
+    //Only a genome that crosses from one mapping into the next gets copied
+    ByteBuffer genome = ByteBuffer.allocate(length);
+    try
+    {
+      while(genome.hasRemaining() && channel.read(genome, offset + genome.position()) >= 0);
+    }
+    catch(IOException e)
+    {
+      throw new IllegalArgumentException("Could not read genome " + k + " from " + file + ": " + e.getMessage());
+    }
+    genome.flip();
+    return genome;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    channel.close();
+  }
+
+  /**
+   * Convert a population file (text or binary) into an archive.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length != 2)
+    {
+      System.out.println("Usage: GenomeArchive population_file archive_file");
+      System.exit(1);
+    }
+    File input = new File(args[0]);
+    File output = new File(args[1]);
+    long start = System.nanoTime();
+    int count;
+    try(PopulationReader reader = new PopulationReader(input))
+    {
+      count = write(reader, output);
+      reader.report();
+    }
+    System.out.format("Archived %d genomes from %s in %s (%.1f ms)\n", count, input, output,
+        (System.nanoTime() - start) / 1e6);
+  }
+}
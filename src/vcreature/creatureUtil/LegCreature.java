@@ -11,13 +11,14 @@ import vcreature.phenotype.Neuron;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Class responsible for making a valid, random creature with symmetrical legs
  * Intended use is to make LegCreature in the physics space, save it into DNA immediately
  * and remove LegCreature from the world (removeAll()).
  *
- * This class is used by MainSim when a population is initialized by a number of random creatures
+ * MainSim no longer uses this class, see RandomDNAGenerator.makeLegCreature().
  */
 public class LegCreature extends RandCreature
 {
@@ -220,7 +221,7 @@ public class LegCreature extends RandCreature
    * @param joint joint you want to mirror
    * @param mirrorJoint mirrored joint you want to create
    */
-  public void findMirrorVector(int edgeToMirror,  Vector3f joint, Vector3f mirrorJoint)
+  public static void findMirrorVector(int edgeToMirror,  Vector3f joint, Vector3f mirrorJoint)
   {
       if (edgeToMirror == 0 || edgeToMirror == 2)
       {
@@ -259,6 +260,14 @@ public class LegCreature extends RandCreature
    * @return edge of child to connect to parent
    */
   public int findChildEdge(int parentEdge)
+  {
+    return findChildEdge(rand, parentEdge);
+  }
+
+  /**
+   * findChildEdge with the random numbers passed in
+   */
+  public static int findChildEdge(Random rand, int parentEdge)
   {
     int childEdge = 0;
     boolean eitherOr = rand.nextBoolean();
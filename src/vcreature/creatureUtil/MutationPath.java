@@ -0,0 +1,133 @@
+package vcreature.creatureUtil;
+
+/**
+ * The mutation Hill Climbing did to make a DNA, packed into a long so it can
+ * be stored on every DNA and replayed without building or parsing strings.
+ * <br><br>
+ * A path holds the block that was mutated and whether it was a neuron (0) or
+ * size (1) mutation, then for neuron mutations which neuron and which of the
+ * four neuron mutations, and for size and neuron constant mutations whether
+ * the change was added or subtracted.  Hill Climbing picks the amounts again
+ * when it replays a path, same as it always has.<br><br>
+ *
+ * Bits: 0 present, 1 mutation type, 2-3 neuron mutation, 4 has neuron,
+ * 5 has add op, 6 add op, 16-31 neuron id, 32-63 block id.
+ */
+public final class MutationPath
+{
+  /** No mutation, what a DNA that didn't come from Hill Climbing has. */
+  public static final long NONE = 0L;
+
+  private static final long PRESENT = 1L;
+  private static final int TYPE_SHIFT = 1;
+  private static final int NEURON_MUTATION_SHIFT = 2;
+  private static final long HAS_NEURON = 1L << 4;
+  private static final long HAS_ADD_OP = 1L << 5;
+  private static final long ADD_OP = 1L << 6;
+  private static final int NEURON_SHIFT = 16;
+  private static final int BLOCK_SHIFT = 32;
+
+  private MutationPath()
+  {
+  }
+
+  /**
+   * Start a path.
+   * @param blockID         block being mutated.
+   * @param mutationType    0 for a neuron mutation, 1 for a size mutation.
+   * @return                the path.
+   */
+  public static long of(int blockID, int mutationType)
+  {
+    return PRESENT | ((long) (mutationType & 1) << TYPE_SHIFT) | ((long) blockID << BLOCK_SHIFT);
+  }
+
+  /**
+   * Add the neuron a neuron mutation was done to.
+   * @param path              path so far.
+   * @param neuronID          neuron of the block.
+   * @param neuronMutation    which neuron mutation, 0 to 3.
+   * @return                  the path.
+   */
+  public static long withNeuron(long path, int neuronID, int neuronMutation)
+  {
+    return path | HAS_NEURON | ((long) (neuronMutation & 3) << NEURON_MUTATION_SHIFT) |
+           ((long) (neuronID & 0xFFFF) << NEURON_SHIFT);
+  }
+
+  /**
+   * Add whether the change was added or subtracted.
+   * @param path      path so far.
+   * @param addOp     true if it was added.
+   * @return          the path.
+   */
+  public static long withAddOp(long path, boolean addOp)
+  {
+    return (path & ~ADD_OP) | HAS_ADD_OP | (addOp ? ADD_OP : 0L);
+  }
+
+  public static boolean isPresent(long path)
+  {
+    return (path & PRESENT) != 0;
+  }
+
+  public static int getBlockID(long path)
+  {
+    return (int) (path >>> BLOCK_SHIFT);
+  }
+
+  public static int getMutationType(long path)
+  {
+    return (int) (path >>> TYPE_SHIFT) & 1;
+  }
+
+  public static boolean hasNeuron(long path)
+  {
+    return (path & HAS_NEURON) != 0;
+  }
+
+  public static int getNeuronID(long path)
+  {
+    return (int) (path >>> NEURON_SHIFT) & 0xFFFF;
+  }
+
+  public static int getNeuronMutation(long path)
+  {
+    return (int) (path >>> NEURON_MUTATION_SHIFT) & 3;
+  }
+
+  public static boolean hasAddOp(long path)
+  {
+    return (path & HAS_ADD_OP) != 0;
+  }
+
+  public static boolean getAddOp(long path)
+  {
+    return (path & ADD_OP) != 0;
+  }
+
+  /**
+   * Path written the way the old mutation sequence strings were, for
+   * printing.
+   * @param path      path to write.
+   * @return          e.g. "3 0 1 1 true", or "none".
+   */
+  public static String toString(long path)
+  {
+    if(!isPresent(path))
+    {
+      return "none";
+    }
+    StringBuilder out = new StringBuilder();
+    out.append(getBlockID(path)).append(' ').append(getMutationType(path));
+    if(hasNeuron(path))
+    {
+      out.append(' ').append(getNeuronID(path)).append(' ').append(getNeuronMutation(path));
+    }
+    if(hasAddOp(path))
+    {
+      out.append(' ').append(getAddOp(path));
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,150 @@
+package vcreature.creatureUtil;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * A block as a box in world space: center, the three axes of its rotation and
+ * its half sizes along them.  Used to check a DNA's blocks for intersections
+ * with plain math instead of building the creature and asking the scene graph.
+ * <br><br>
+ *
+ * The intersection test is the separating axis test: two boxes only overlap if
+ * they overlap when projected onto each of the 3 axes of either box and the 9
+ * cross products of one box's axes with the other's.
+ */
+public class OrientedBox
+{
+  // Boxes have to overlap by more than this to intersect, so blocks that are
+  // just touching (like siblings joined edge to edge) and float error don't
+  // count, and can be this far apart and still touch.
+  private static final float TOLERANCE = 1e-3f;
+  // Cross products shorter than this come from (nearly) parallel edges, the
+  // face axes already cover those.
+  private static final float PARALLEL = 1e-3f;
+
+  private final Vector3f center;
+  private final Vector3f[] axes;
+  private final float[] halfSize;
+
+  /**
+   * @param center      center of the box in world coordinates.
+   * @param halfSize    half the size of the box along each of its axes.
+   * @param rotation    rotation of the box.
+   */
+  public OrientedBox(Vector3f center, Vector3f halfSize, Quaternion rotation)
+  {
+    this.center = new Vector3f(center);
+    this.axes = new Vector3f[]{rotation.getRotationColumn(0), rotation.getRotationColumn(1),
+                               rotation.getRotationColumn(2)};
+    this.halfSize = new float[]{halfSize.x, halfSize.y, halfSize.z};
+  }
+
+  /**
+   * Turn a point in the box's local coordinates (relative to its center,
+   * unrotated) into world coordinates.
+   * @param local     point in local coordinates.
+   * @param store     where to put the result.
+   * @return          store.
+   */
+  public Vector3f localToWorld(Vector3f local, Vector3f store)
+  {
+    float x = local.x, y = local.y, z = local.z;
+    store.set(center);
+    store.addLocal(axes[0].x * x + axes[1].x * y + axes[2].x * z,
+                   axes[0].y * x + axes[1].y * y + axes[2].y * z,
+                   axes[0].z * x + axes[1].z * y + axes[2].z * z);
+    return store;
+  }
+
+  /**
+   * Check if two boxes overlap.
+   * @param other     box to check against.
+   * @return          true if they overlap by more than TOLERANCE.
+   */
+  public boolean intersects(OrientedBox other)
+  {
+    return closerThan(other, -TOLERANCE);
+  }
+
+  /**
+   * Check if two boxes overlap or touch, the way jME's bounding boxes count
+   * it.
+   * @param other     box to check against.
+   * @return          true if they're less than TOLERANCE apart.
+   */
+  public boolean touches(OrientedBox other)
+  {
+    return closerThan(other, TOLERANCE);
+  }
+
+  /**
+   * The separating axis test.
+   * @param other     box to check against.
+   * @param gap       how far apart the boxes can be and still count,
+   *                  negative if they have to overlap by that much.
+   * @return          false if there's an axis the boxes are further apart on.
+   */
+  private boolean closerThan(OrientedBox other, float gap)
+  {
+    float[][] r = new float[3][3];
+    float[][] absR = new float[3][3];
+    float[] t = new float[3];
+    Vector3f between = other.center.subtract(center);
+    //other's axes and the vector between the centers in this box's frame
+    for(int i = 0; i < 3; ++i)
+    {
+      for(int j = 0; j < 3; ++j)
+      {
+        r[i][j] = axes[i].dot(other.axes[j]);
+        absR[i][j] = Math.abs(r[i][j]);
+      }
+      t[i] = between.dot(axes[i]);
+    }
+    float[] a = halfSize;
+    float[] b = other.halfSize;
+
+    //this box's faces
+    for(int i = 0; i < 3; ++i)
+    {
+      float rb = b[0] * absR[i][0] + b[1] * absR[i][1] + b[2] * absR[i][2];
+      if(Math.abs(t[i]) > a[i] + rb + gap)
+      {
+        return false;
+      }
+    }
+    //other box's faces
+    for(int j = 0; j < 3; ++j)
+    {
+      float ra = a[0] * absR[0][j] + a[1] * absR[1][j] + a[2] * absR[2][j];
+      float tj = t[0] * r[0][j] + t[1] * r[1][j] + t[2] * r[2][j];
+      if(Math.abs(tj) > ra + b[j] + gap)
+      {
+        return false;
+      }
+    }
+    //edge cross edge
+    for(int i = 0; i < 3; ++i)
+    {
+      int i1 = (i + 1) % 3, i2 = (i + 2) % 3;
+      for(int j = 0; j < 3; ++j)
+      {
+        int j1 = (j + 1) % 3, j2 = (j + 2) % 3;
+        float length = (float) Math.sqrt(Math.max(0f, 1f - r[i][j] * r[i][j]));
+        if(length < PARALLEL)
+        {
+          continue;
+        }
+        float ra = a[i1] * absR[i2][j] + a[i2] * absR[i1][j];
+        float rb = b[j1] * absR[i][j2] + b[j2] * absR[i][j1];
+        float tij = t[i2] * r[i1][j] - t[i1] * r[i2][j];
+        //the axis isn't normalized, so scale the gap with it
+        if(Math.abs(tij) > ra + rb + gap * length)
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
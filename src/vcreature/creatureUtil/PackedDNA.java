@@ -0,0 +1,320 @@
+package vcreature.creatureUtil;
+
+import com.jme3.math.Vector3f;
+import vcreature.phenotype.BlockVector;
+import vcreature.phenotype.EnumNeuronInput;
+import vcreature.phenotype.Neuron;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A genome packed into one flat buffer instead of a tree of BlockDNA, Vector3f
+ * and NeuronDNA objects, for writing out and sending around.  DNA.pack() lays
+ * the genome out straight into the buffer, and wrap() reads one without
+ * copying it, so a genome only gets copied when it's packed.  Use toDNA() to
+ * get something that can be mutated or built.<br><br>
+ *
+ * Layout of getBuffer() and wrap() (big endian, ints and floats are 4 bytes):<br>
+ * header: blockSlots, neuronSlots, numBlocks, length, fitness<br>
+ * blockSlots block slots: flags (present, has angles, which vectors aren't
+ * null), blockID, parentID, number of neurons, 3 angles, 6 vectors of 3
+ * floats, then neuronSlots neurons of TOTAL_INPUTS (input type, constant,
+ * block index)
+ */
+public class PackedDNA
+{
+  private static final int HEADER_BYTES = 5 * 4;
+  private static final int NUM_VECTORS = BlockVector.values().length;
+  private static final EnumNeuronInput[] INPUTS = EnumNeuronInput.values();
+  private static final int NEURON_BYTES = Neuron.TOTAL_INPUTS * 3 * 4;
+  private static final int BLOCK_FIXED_BYTES = (4 + 3 + NUM_VECTORS * 3) * 4;
+
+  //header offsets
+  private static final int BLOCK_SLOTS = 0;
+  private static final int NEURON_SLOTS = 4;
+  private static final int NUM_BLOCKS = 8;
+  private static final int LENGTH = 12;
+  private static final int FITNESS = 16;
+
+  //offsets inside a block
+  private static final int FLAGS = 0;
+  private static final int BLOCK_ID = 4;
+  private static final int PARENT_ID = 8;
+  private static final int NUM_NEURONS = 12;
+  private static final int ANGLES = 16;
+  private static final int VECTORS = 28;
+  private static final int NEURONS = BLOCK_FIXED_BYTES;
+
+  private static final int PRESENT = 1;
+  private static final int HAS_ANGLES = 2;
+  private static final int VECTOR_FLAG = 4; //shifted left by the vector's ordinal
+
+  private final ByteBuffer genome; //positioned at 0, limit at the end of the genome
+  private final int blockSlots;
+  private final int slotBytes;
+
+  /**
+   * Blank genome with no blocks, filled in by DNA.pack().
+   * @param blockSlots      most blocks it can hold.
+   * @param neuronSlots     most neurons a block can have.
+   */
+  PackedDNA(int blockSlots, int neuronSlots)
+  {
+    this(ByteBuffer.allocate(byteSize(blockSlots, neuronSlots)), blockSlots, neuronSlots);
+    genome.putInt(BLOCK_SLOTS, blockSlots);
+    genome.putInt(NEURON_SLOTS, neuronSlots);
+  }
+
+  private PackedDNA(ByteBuffer genome, int blockSlots, int neuronSlots)
+  {
+    this.genome = genome;
+    this.blockSlots = blockSlots;
+    this.slotBytes = BLOCK_FIXED_BYTES + neuronSlots * NEURON_BYTES;
+  }
+
+  /**
+   * Read a genome laid out like getBuffer() without copying it.  The buffer
+   * must not be changed while the genome is in use.
+   * @param buffer      buffer positioned at the start of the genome.
+   * @return            genome reading from the buffer.
+   */
+  public static PackedDNA wrap(ByteBuffer buffer)
+  {
+    ByteBuffer genome = buffer.slice();
+    if(genome.capacity() < HEADER_BYTES)
+    {
+      throw new IllegalArgumentException("Buffer is too short for a packed genome: " + genome.capacity());
+    }
+    int blockSlots = genome.getInt(BLOCK_SLOTS);
+    int neuronSlots = genome.getInt(NEURON_SLOTS);
+    int size = byteSize(blockSlots, neuronSlots);
+    if(blockSlots < 0 || neuronSlots < 0 || size > genome.capacity())
+    {
+      throw new IllegalArgumentException("Buffer is too short for a packed genome: " + genome.capacity() + " < " + size);
+    }
+    genome.limit(size);
+    PackedDNA packed = new PackedDNA(genome, blockSlots, neuronSlots);
+    for(int i = 0; i < blockSlots; ++i)
+    {
+      if(packed.hasBlock(i) && (packed.numNeurons(i) < 0 || packed.numNeurons(i) > neuronSlots))
+      {
+        throw new IllegalArgumentException("Block " + i + " has " + packed.numNeurons(i) + " neurons in " +
+                                           neuronSlots + " slots");
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Fitness stored in a genome laid out like getBuffer(), without reading the
+   * rest of it.
+   * @param buffer      buffer positioned at the start of the genome.
+   * @return            stored fitness.
+   */
+  static float peekFitness(ByteBuffer buffer)
+  {
+    if(buffer.remaining() < HEADER_BYTES)
+    {
+      throw new IllegalArgumentException("Buffer is too short for a packed genome: " + buffer.remaining());
+    }
+    return buffer.getFloat(buffer.position() + FITNESS);
+  }
+
+  /**
+   * Pack a DNA.
+   * @param dna       DNA to pack.
+   * @return          packed copy of the DNA.
+   */
+  public static PackedDNA fromDNA(DNA dna)
+  {
+    return dna.pack();
+  }
+
+  /**
+   * Unpack into a regular DNA.
+   * @return        new DNA with the same genome.
+   */
+  public DNA toDNA()
+  {
+    return new DNA(this);
+  }
+
+  /**
+   * Bytes getBuffer() needs for a genome with the given number of slots.
+   * @param blockSlots      most blocks.
+   * @param neuronSlots     most neurons per block.
+   * @return                size in bytes.
+   */
+  public static int byteSize(int blockSlots, int neuronSlots)
+  {
+    return HEADER_BYTES + blockSlots * (BLOCK_FIXED_BYTES + neuronSlots * NEURON_BYTES);
+  }
+
+  /**
+   * The whole genome in one buffer, for writing it out.  Read it back with
+   * wrap().  The bytes aren't copied, so don't change them.
+   * @return      buffer over the genome, positioned at 0.
+   */
+  public ByteBuffer getBuffer()
+  {
+    return genome.duplicate();
+  }
+
+  public int getBlockSlots()
+  {
+    return blockSlots;
+  }
+
+  public int getNumBlocks()
+  {
+    return genome.getInt(NUM_BLOCKS);
+  }
+
+  public int getLength()
+  {
+    return genome.getInt(LENGTH);
+  }
+
+  public float getFitness()
+  {
+    return genome.getFloat(FITNESS);
+  }
+
+  /**
+   * Is there a block in a slot.
+   * @param id      block slot.
+   * @return        true if the slot is used.
+   */
+  public boolean hasBlock(int id)
+  {
+    return 0 <= id && id < blockSlots && (flags(id) & PRESENT) != 0;
+  }
+
+  public int getBlockID(int id)
+  {
+    return genome.getInt(start(id) + BLOCK_ID);
+  }
+
+  public int getParentID(int id)
+  {
+    return genome.getInt(start(id) + PARENT_ID);
+  }
+
+  /**
+   * Copy one of a block's vectors into store.
+   * @param id        block slot.
+   * @param type      which vector.
+   * @param store     vector to put the values in.
+   * @return          store, or null if the block doesn't have that vector.
+   */
+  public Vector3f getVector(int id, BlockVector type, Vector3f store)
+  {
+    if((flags(id) & (VECTOR_FLAG << type.ordinal())) == 0)
+    {
+      return null;
+    }
+    int offset = start(id) + VECTORS + type.ordinal() * 12;
+    return store.set(genome.getFloat(offset), genome.getFloat(offset + 4), genome.getFloat(offset + 8));
+  }
+
+  /**
+   * Get a block's angles.
+   * @param id      block slot.
+   * @return        new {x, y, z} array, or null if the block has no angles.
+   */
+  public float[] getAngles(int id)
+  {
+    if((flags(id) & HAS_ANGLES) == 0)
+    {
+      return null;
+    }
+    int offset = start(id) + ANGLES;
+    return new float[]{genome.getFloat(offset), genome.getFloat(offset + 4), genome.getFloat(offset + 8)};
+  }
+
+  /**
+   * Get a neuron's input type.  The neuron getters don't check the indices.
+   * @return        input type, or null if it isn't set.
+   */
+  public EnumNeuronInput getNeuronInput(int blockID, int neuronNum, int inputNum)
+  {
+    int ordinal = genome.getInt(rule(blockID, neuronNum, inputNum));
+    return ordinal < 0 ? null : INPUTS[ordinal];
+  }
+
+  public float getNeuronConstant(int blockID, int neuronNum, int constNum)
+  {
+    return genome.getFloat(rule(blockID, neuronNum, constNum) + 4);
+  }
+
+  public int getNeuronBlock(int blockID, int neuronNum, int blockNum)
+  {
+    return genome.getInt(rule(blockID, neuronNum, blockNum) + 8);
+  }
+
+  //==================Used by DNA to pack a genome=============================
+  void setHeader(int numBlocks, int length, float fitness)
+  {
+    genome.putInt(NUM_BLOCKS, numBlocks);
+    genome.putInt(LENGTH, length);
+    genome.putFloat(FITNESS, fitness);
+  }
+
+  void putBlock(int id, int blockID, int parentID, int neurons)
+  {
+    int start = start(id);
+    genome.putInt(start + FLAGS, PRESENT);
+    genome.putInt(start + BLOCK_ID, blockID);
+    genome.putInt(start + PARENT_ID, parentID);
+    genome.putInt(start + NUM_NEURONS, neurons);
+  }
+
+  void putAngles(int id, float[] angles)
+  {
+    int start = start(id);
+    genome.putInt(start + FLAGS, flags(id) | HAS_ANGLES);
+    for(int a = 0; a < 3; ++a)
+    {
+      genome.putFloat(start + ANGLES + a * 4, a < angles.length ? angles[a] : 0);
+    }
+  }
+
+  void putVector(int id, int type, float x, float y, float z)
+  {
+    int start = start(id);
+    genome.putInt(start + FLAGS, flags(id) | (VECTOR_FLAG << type));
+    int offset = start + VECTORS + type * 12;
+    genome.putFloat(offset, x);
+    genome.putFloat(offset + 4, y);
+    genome.putFloat(offset + 8, z);
+  }
+
+  void putNeuronRule(int id, int neuronNum, int ruleNum, EnumNeuronInput type, float constant, int blockIndex)
+  {
+    int offset = rule(id, neuronNum, ruleNum);
+    genome.putInt(offset, type == null ? -1 : type.ordinal());
+    genome.putFloat(offset + 4, constant);
+    genome.putInt(offset + 8, blockIndex);
+  }
+
+  int numNeurons(int id)
+  {
+    return genome.getInt(start(id) + NUM_NEURONS);
+  }
+
+  //===========================Helpers========================================
+  private int start(int id)
+  {
+    return HEADER_BYTES + id * slotBytes;
+  }
+
+  private int rule(int id, int neuronNum, int ruleNum)
+  {
+    return start(id) + NEURONS + neuronNum * NEURON_BYTES + ruleNum * 12;
+  }
+
+  private int flags(int id)
+  {
+    return genome.getInt(start(id) + FLAGS);
+  }
+}
@@ -0,0 +1,51 @@
+package vcreature.creatureUtil;
+
+import vcreature.mainSimulation.Population;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Converts a population file between the text and binary formats. Whichever format the input is in, the output
+ * is the other one.
+ *
+ * Usage: PopulationConverter input_file output_file
+ */
+public class PopulationConverter
+{
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length != 2)
+    {
+      System.out.println("Usage: PopulationConverter input_file output_file");
+      System.exit(1);
+    }
+    File input = new File(args[0]);
+    File output = new File(args[1]);
+
+    boolean binary = DNAio.isBinary(input);
+    long start = System.nanoTime();
+    Population population = new Population();
+    DNAio.readPopulation(input, population);
+    long read = System.nanoTime();
+
+    ArrayList<DNA> dnas = new ArrayList<>();
+    for (Population.Strand strand : population.getStrands())
+    {
+      dnas.add(strand.peekLast());
+    }
+    if (binary)
+    {
+      DNAio.writeText(dnas, output);
+    }
+    else
+    {
+      DNAio.writeBinary(dnas, output);
+    }
+    long written = System.nanoTime();
+
+    System.out.format("Converted %d genomes from %s to %s (read %.1f ms, write %.1f ms)\n", dnas.size(),
+        binary ? "binary" : "text", binary ? "text" : "binary", (read - start) / 1e6, (written - read) / 1e6);
+  }
+}
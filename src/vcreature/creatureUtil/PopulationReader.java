@@ -0,0 +1,418 @@
+package vcreature.creatureUtil;
+
+import vcreature.phenotype.Neuron;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a population file (text or binary, see DNAio) one genome at a time,
+ * so only the genome being parsed has to be in memory.  Genomes that can't be
+ * parsed are skipped and counted instead of ending the read.<br><br>
+ *
+ * In the binary format every genome has its length in front of it, so a
+ * broken one is skipped exactly.  The text format has nothing between genomes,
+ * so after a broken one the reader skips ahead to the next place that looks
+ * like the start of a genome: the number of blocks followed by the root
+ * block's id 0 and parent -1.  If the file ends in the middle of a genome that
+ * genome is skipped.
+ */
+public class PopulationReader implements Iterator<DNA>, Closeable
+{
+  //Anything claiming more blocks than this is garbage, not a creature
+  private static final int MAX_RECORD_BLOCKS = 1000;
+  private static final int READ_BUFFER_BYTES = 1 << 16;
+
+  private final File file;
+  private final FileChannel channel;
+  private final boolean binary;
+
+  //binary
+  private ByteBuffer window;
+  private int remainingRecords;
+
+  //text
+  private Tokens tokens;
+  private boolean resync = false;
+
+  private DNA nextDNA;
+  private int read = 0;
+  private int skipped = 0;
+
+  /**
+   * Open a population file.
+   * @param f               file to read.
+   * @throws IOException    if it can't be opened or it's a binary file of a
+   *                        version we can't read.
+   */
+  public PopulationReader(File f) throws IOException
+  {
+    file = f;
+    binary = DNAio.isBinary(f);
+    channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+    try
+    {
+      if(binary)
+      {
+        window = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        window.flip();
+        if(!fill(DNAio.BINARY_HEADER_BYTES))
+        {
+          throw new IOException(f + " is not a binary population file");
+        }
+        window.getInt(); //magic, isBinary checked it
+        int version = window.getInt();
+        if(version != DNAio.BINARY_VERSION)
+        {
+          throw new IOException(f + " has version " + version + ", can only read version " + DNAio.BINARY_VERSION);
+        }
+        remainingRecords = window.getInt();
+      }
+      else
+      {
+        tokens = new Tokens(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+      }
+    }
+    catch(IOException e)
+    {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Read the N genomes with the best stored fitness.  In the binary format
+   * only the fitness of each genome is looked at until the end, then the
+   * winners are unpacked.  The text format doesn't store fitness, so it gets
+   * the first N genomes and stops reading there.
+   * @param f               file to read.
+   * @param n               number of genomes wanted.
+   * @return                up to n genomes, best first.
+   * @throws IOException
+   */
+  public static List<DNA> readTop(File f, int n) throws IOException
+  {
+    ArrayList<DNA> top = new ArrayList<>();
+    try(PopulationReader reader = new PopulationReader(f))
+    {
+      if(!reader.binary)
+      {
+        while(top.size() < n && reader.hasNext())
+        {
+          top.add(reader.next());
+        }
+        reader.report();
+        return top;
+      }
+
+      PriorityQueue<PackedDNA> best = new PriorityQueue<>(Math.max(1, n),
+                                                          Comparator.comparingDouble(PackedDNA::getFitness));
+      ByteBuffer record;
+      while(n > 0 && (record = reader.nextRecord()) != null)
+      {
+        try
+        {
+          float fitness = PackedDNA.peekFitness(record);
+          if(best.size() < n || fitness > best.peek().getFitness())
+          {
+            //the window gets reused, so the ones we keep need their own copy
+            ByteBuffer copy = ByteBuffer.allocate(record.remaining());
+            copy.put(record).flip();
+            best.add(PackedDNA.wrap(copy));
+            if(best.size() > n)
+            {
+              best.poll();
+            }
+          }
+        }
+        catch(IllegalArgumentException | IndexOutOfBoundsException e)
+        {
+          reader.skipped++;
+        }
+      }
+      while(!best.isEmpty())
+      {
+        top.add(best.poll().toDNA());
+      }
+      reader.report();
+    }
+    catch(UncheckedIOException e)
+    {
+      throw e.getCause();
+    }
+    Collections.reverse(top);
+    return top;
+  }
+
+  @Override
+  public boolean hasNext()
+  {
+    if(nextDNA == null)
+    {
+      nextDNA = binary ? nextBinary() : nextText();
+    }
+    return nextDNA != null;
+  }
+
+  @Override
+  public DNA next()
+  {
+    if(!hasNext())
+    {
+      throw new NoSuchElementException();
+    }
+    DNA dna = nextDNA;
+    nextDNA = null;
+    read++;
+    return dna;
+  }
+
+  /**
+   * The rest of the genomes as a sequential stream.  Closing the stream
+   * closes the reader.
+   * @return      stream of genomes.
+   */
+  public Stream<DNA> stream()
+  {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED |
+                                                                          Spliterator.NONNULL), false)
+                        .onClose(this::close);
+  }
+
+  /**
+   * @return      number of genomes returned so far.
+   */
+  public int getRead()
+  {
+    return read;
+  }
+
+  /**
+   * @return      number of broken genomes skipped so far.
+   */
+  public int getSkipped()
+  {
+    return skipped;
+  }
+
+  /**
+   * Print how many genomes were skipped, if any.
+   */
+  public void report()
+  {
+    if(skipped > 0)
+    {
+      System.out.println("Skipped " + skipped + " broken genomes in " + file);
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    try
+    {
+      channel.close();
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  //=========================== binary =======================================
+
+  private DNA nextBinary()
+  {
+    ByteBuffer record;
+    while((record = nextRecord()) != null)
+    {
+      try
+      {
+        return PackedDNA.wrap(record).toDNA();
+      }
+      catch(IllegalArgumentException | IndexOutOfBoundsException e)
+      {
+        skipped++;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Next length prefixed genome, only good until the next call.
+   * @return      the genome's bytes or null at the end of the file.
+   */
+  private ByteBuffer nextRecord()
+  {
+    try
+    {
+      if(remainingRecords <= 0)
+      {
+        return null;
+      }
+      remainingRecords--;
+      if(!fill(4))
+      {
+        return truncated();
+      }
+      int length = window.getInt();
+      if(length < 0 || length > channel.size())
+      {
+        //can't know where the next genome starts
+        return truncated();
+      }
+      if(!fill(length))
+      {
+        return truncated();
+      }
+      ByteBuffer record = window.slice();
+      record.limit(length);
+      window.position(window.position() + length);
+      return record;
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private ByteBuffer truncated()
+  {
+    skipped += remainingRecords + 1;
+    remainingRecords = 0;
+    return null;
+  }
+
+  /**
+   * Make sure the window has at least some bytes left in it, growing it if a
+   * genome is bigger than it.
+   * @return      false if the file ends first.
+   */
+  private boolean fill(int bytes) throws IOException
+  {
+    if(window.remaining() >= bytes)
+    {
+      return true;
+    }
+    if(window.capacity() < bytes)
+    {
+      ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes, window.capacity() * 2));
+      bigger.put(window);
+      window = bigger;
+    }
+    else
+    {
+      window.compact();
+    }
+    while(window.position() < bytes && channel.read(window) >= 0);
+    window.flip();
+    return window.remaining() >= bytes;
+  }
+
+  //============================ text ========================================
+
+  /**
+   * Same parsing DNAio has always done, one genome at a time.
+   */
+  private DNA nextText()
+  {
+    try
+    {
+      while(tokens.hasNext())
+      {
+        if(!tokens.hasNextInt() || (resync && !atGenomeStart()))
+        {
+          tokens.next();
+          continue;
+        }
+        resync = false;
+        try
+        {
+          return parseGenome();
+        }
+        catch(RuntimeException e)
+        {
+          //bad numbers, and ids that don't fit the DNA the genome started
+          skipped++;
+          resync = true;
+        }
+      }
+      return null;
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private boolean atGenomeStart() throws IOException
+  {
+    return "0".equals(tokens.peek(1)) && "-1".equals(tokens.peek(2));
+  }
+
+  private DNA parseGenome() throws IOException
+  {
+    int numBlocks = tokens.nextInt();
+    if(numBlocks < 0 || numBlocks > MAX_RECORD_BLOCKS)
+    {
+      throw new IllegalArgumentException("Genome with " + numBlocks + " blocks");
+    }
+    DNA dnaIn = new DNA(numBlocks);
+    for(int i = 0; i < numBlocks; ++i)
+    {
+      int id = tokens.nextInt();
+      int parentID = tokens.nextInt();
+      dnaIn.addBlockToDNA(id, parentID);
+      float x = tokens.nextFloat();
+      float y = tokens.nextFloat();
+      float z = tokens.nextFloat();
+      dnaIn.alterAngles(x, y, z, i);
+      for(int j = 0; j < 6; ++j)
+      {
+        x = tokens.nextFloat();
+        y = tokens.nextFloat();
+        z = tokens.nextFloat();
+        dnaIn.alterVector(x, y, z, i, j);
+      }
+
+      int numNeurons = tokens.nextInt();
+      if(numNeurons < 0 || numNeurons > CreatureConstants.MAX_NEURON_PER_BLOCK * MAX_RECORD_BLOCKS)
+      {
+        throw new IllegalArgumentException("Block with " + numNeurons + " neurons");
+      }
+      for(int j = 0; j < numNeurons; ++j)
+      {
+        dnaIn.addNeuronToBlock(i);
+        for(int k = 0; k < Neuron.TOTAL_INPUTS; ++k)
+        {
+          int neuronInputType = tokens.nextInt();
+          float neuronConstant = tokens.nextFloat();
+          int neuronBlockID = tokens.nextInt();
+          dnaIn.alterNeuronInput(i, j, k, neuronInputType);
+          dnaIn.alterNeuronConstant(i, j, k, neuronConstant);
+          dnaIn.alterNeuronBlock(i, j, k, neuronBlockID);
+        }
+      }
+    }
+    return dnaIn;
+  }
+}
@@ -22,7 +22,8 @@ import vcreature.phenotype.*;
  * save it into DNA by making a new DNA object with the RandCreature in its parameter
  * and immediately remove the RandCreature from the physics space (RandCreature.removeAll())
  *
- * This class is used by MainSim when a population is initialized by a number of random creatures
+ * MainSim no longer uses this class, RandomDNAGenerator makes the same kind of creature straight into DNA without
+ * a physics space, using the surface and edge rules from here.
  */
 
 public class RandCreature
@@ -357,6 +358,14 @@ public class RandCreature
    * @return edge of child to connect to parent
    */
   private int correspondingChildEdge(int parentEdge)
+  {
+    return correspondingChildEdge(rand, parentEdge);
+  }
+
+  /**
+   * correspondingChildEdge with the random numbers passed in
+   */
+  static int correspondingChildEdge(Random rand, int parentEdge)
   {
     int or = rand.nextInt(2);
     int childEdge = 0;
@@ -401,7 +410,7 @@ public class RandCreature
    * @param parentSurface
    * @return
    */
-  public int correspondingChildSurface(int parentSurface)
+  public static int correspondingChildSurface(int parentSurface)
   {
     int childSurface = -1;
     switch (parentSurface) {
@@ -430,6 +439,15 @@ public class RandCreature
    * @param rotationAxis axis of rotation the joint should turn around
    */
   public void findVectorToEdge(Vector3f size, int edge, int surface, Vector3f joint, Vector3f rotationAxis)
+  {
+    findVectorToEdge(rand, size, edge, surface, joint, rotationAxis);
+  }
+
+  /**
+   * findVectorToEdge with the random numbers passed in
+   */
+  public static void findVectorToEdge(Random rand, Vector3f size, int edge, int surface, Vector3f joint,
+                                      Vector3f rotationAxis)
   {
     int sign = 1;
     if (surface == 1 || surface == 0)
@@ -438,7 +456,7 @@ public class RandCreature
       switch (edge)
       {
         case 0:
-          joint.x = randomSurfacePoint(size.x);
+          joint.x = randomSurfacePoint(rand, size.x);
           joint.y = size.y*(sign);
           joint.z = -size.z;
           rotationAxis.set(Vector3f.UNIT_X);
@@ -446,11 +464,11 @@ public class RandCreature
         case 1:
           joint.x = size.x;
           joint.y = size.y*(sign);
-          joint.z = randomSurfacePoint(size.z);
+          joint.z = randomSurfacePoint(rand, size.z);
           rotationAxis.set(Vector3f.UNIT_Z);
           break;
         case 2:
-          joint.x = randomSurfacePoint(size.x);
+          joint.x = randomSurfacePoint(rand, size.x);
           joint.y = size.y*(sign);
           joint.z = size.z;
           rotationAxis.set(Vector3f.UNIT_X);
@@ -458,7 +476,7 @@ public class RandCreature
         case 3:
           joint.x = -size.x;
           joint.y = size.y*(sign);
-          joint.z = randomSurfacePoint(size.z);
+          joint.z = randomSurfacePoint(rand, size.z);
           rotationAxis.set(Vector3f.UNIT_Z);
           break;
         default:
@@ -473,24 +491,24 @@ public class RandCreature
         case 0:
           joint.x = size.x*(sign);
           joint.y = size.y;
-          joint.z = randomSurfacePoint(size.z);
+          joint.z = randomSurfacePoint(rand, size.z);
           rotationAxis.set(Vector3f.UNIT_Z);
           break;
         case 1:
           joint.x = size.x*(sign);
-          joint.y = randomSurfacePoint(size.y);
+          joint.y = randomSurfacePoint(rand, size.y);
           joint.z = -size.z;
           rotationAxis.set(Vector3f.UNIT_Y);
           break;
         case 2:
           joint.x = size.x*(sign);
           joint.y = -size.y;
-          joint.z = randomSurfacePoint(size.z);
+          joint.z = randomSurfacePoint(rand, size.z);
           rotationAxis.set(Vector3f.UNIT_Z);
           break;
         case 3:
           joint.x = size.x*(sign);
-          joint.y = randomSurfacePoint(size.y);
+          joint.y = randomSurfacePoint(rand, size.y);
           joint.z = size.z;
           rotationAxis.set(Vector3f.UNIT_Y);
           break;
@@ -504,26 +522,26 @@ public class RandCreature
       switch (edge)
       {
         case 0:
-          joint.x = randomSurfacePoint(size.x);
+          joint.x = randomSurfacePoint(rand, size.x);
           joint.y = size.y;
           joint.z = size.z * sign;
           rotationAxis.set(Vector3f.UNIT_X);
           break;
         case 1:
           joint.x = size.x;
-          joint.y = randomSurfacePoint(size.y);
+          joint.y = randomSurfacePoint(rand, size.y);
           joint.z = size.z * sign;
           rotationAxis.set(Vector3f.UNIT_Y);
           break;
         case 2:
-          joint.x = randomSurfacePoint(size.x);
+          joint.x = randomSurfacePoint(rand, size.x);
           joint.y = -size.y;
           joint.z = size.z * sign;
           rotationAxis.set(Vector3f.UNIT_X);
           break;
         case 3:
           joint.x = -size.x;
-          joint.y = randomSurfacePoint(size.y);
+          joint.y = randomSurfacePoint(rand, size.y);
           joint.z = size.z * sign;
           rotationAxis.set(Vector3f.UNIT_Z);
           break;
@@ -539,6 +557,14 @@ public class RandCreature
    * @return float value of point on block surface
    */
   public float randomSurfacePoint(float bounds)
+  {
+    return randomSurfacePoint(rand, bounds);
+  }
+
+  /**
+   * randomSurfacePoint with the random numbers passed in
+   */
+  public static float randomSurfacePoint(Random rand, float bounds)
   {
     int sign = rand.nextInt(2);
     int scale = (int) bounds;
@@ -742,7 +768,7 @@ public class RandCreature
     }
   }
 
-  public class IdSurfaceEdge
+  public static class IdSurfaceEdge
   {
     int id;
     int surface;
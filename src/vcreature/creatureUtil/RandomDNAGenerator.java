@@ -0,0 +1,437 @@
+package vcreature.creatureUtil;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import vcreature.phenotype.BlockVector;
+import vcreature.phenotype.EnumNeuronInput;
+import vcreature.phenotype.Neuron;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes the DNA of random creatures and leg creatures without building them.
+ * Follows the same surface and edge rules as RandCreature and LegCreature
+ * (they're shared with them), but the blocks are just boxes checked against
+ * each other with OrientedBox, so there's no PhysicsSpace, scene graph or
+ * anything else from jME involved and nothing to tear down afterwards.<br><br>
+ *
+ * A generator isn't thread safe, but they don't share anything either, so
+ * give each thread its own (see makeRandomDNAs).
+ */
+public class RandomDNAGenerator
+{
+  private static final Quaternion AXIS_ALIGNED = new Quaternion(CreatureConstants.IDENTITY_QUATERNION);
+
+  private final Random rand;
+  //blocks of the creature being made, in id order
+  private final ArrayList<BlockPlan> body = new ArrayList<>();
+
+  /**
+   * @param rand      random numbers for everything the generator picks.
+   */
+  public RandomDNAGenerator(Random rand)
+  {
+    this.rand = rand;
+  }
+
+  /**
+   * Make a bunch of random creatures using more than one thread.  The same
+   * seed and thread count always make the same creatures.
+   * @param count             number of creatures to make.
+   * @param threads           number of threads to make them with.
+   * @param seed              seed for the generators.
+   * @param leg_creature      only make leg creatures.
+   * @param random_creature   only make random creatures.
+   * @return                  the DNAs, count long.
+   */
+  public static ArrayList<DNA> makeRandomDNAs(int count, int threads, long seed, boolean leg_creature,
+                                              boolean random_creature)
+  {
+    threads = Math.max(1, Math.min(threads, count));
+    Random seeds = new Random(seed);
+    List<List<DNA>> chunks = new ArrayList<>();
+    Thread[] workers = new Thread[threads];
+    for(int t = 0; t < threads; ++t)
+    {
+      //split count as evenly as possible, each thread filling its own list
+      int chunkSize = count / threads + (t < count % threads ? 1 : 0);
+      ArrayList<DNA> chunk = new ArrayList<>(chunkSize);
+      RandomDNAGenerator generator = new RandomDNAGenerator(new Random(seeds.nextLong()));
+      chunks.add(chunk);
+      workers[t] = new Thread(() ->
+      {
+        while(chunk.size() < chunkSize)
+        {
+          chunk.add(generator.makeRandomDNA(leg_creature, random_creature));
+        }
+      }, "Random Creatures " + t);
+      workers[t].start();
+    }
+    ArrayList<DNA> dnas = new ArrayList<>(count);
+    for(int t = 0; t < threads; ++t)
+    {
+      try
+      {
+        workers[t].join();
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while making random creatures");
+      }
+      dnas.addAll(chunks.get(t));
+    }
+    return dnas;
+  }
+
+  /**
+   * Make the DNA of a random creature, a leg creature or either one.
+   * @param leg_creature      only make leg creatures.
+   * @param random_creature   only make random creatures.
+   * @return                  DNA of the new creature.
+   */
+  public DNA makeRandomDNA(boolean leg_creature, boolean random_creature)
+  {
+    //if only creating leg creatures
+    if(leg_creature && !random_creature)
+    {
+      return makeLegCreature();
+    }
+    //if only creating random creatures
+    else if(random_creature && !leg_creature)
+    {
+      return makeRandomCreature();
+    }
+    //else randomly choose to make a random or leg creature
+    return rand.nextBoolean() ? makeLegCreature() : makeRandomCreature();
+  }
+
+  /**
+   * Make the DNA of a creature the way RandCreature would, blocks joined edge
+   * to edge anywhere on any block.
+   * @return        DNA of the new creature.
+   */
+  public DNA makeRandomCreature()
+  {
+    body.clear();
+    ArrayList<RandCreature.IdSurfaceEdge> availableLocations = new ArrayList<>();
+
+    //choose random number of blocks
+    int blockNumber = rand.nextInt(CreatureConstants.MAX_BLOCKS-2)+2;
+
+    //make a random sized root
+    addRoot();
+    addAvailableEdges(availableLocations, 0, 0);
+
+    while(body.size() < blockNumber && !availableLocations.isEmpty())
+    {
+      RandCreature.IdSurfaceEdge ise = availableLocations.get(rand.nextInt(availableLocations.size()));
+      if(addRandomBlock(ise))
+      {
+        addAvailableEdges(availableLocations, body.size()-1, 0);
+      }
+      else
+      {
+        availableLocations.remove(ise);
+      }
+    }
+    return makeDNA();
+  }
+
+  /**
+   * Make the DNA of a creature the way LegCreature would, pairs of blocks
+   * mirrored on the two sides of the creature hanging off the bottoms of
+   * their parents.
+   * @return        DNA of the new creature.
+   */
+  public DNA makeLegCreature()
+  {
+    body.clear();
+    ArrayList<RandCreature.IdSurfaceEdge> availableEdges = new ArrayList<>();
+
+    //find a random odd number of blocks from 3 up to the max number of blocks
+    int maxOdd = CreatureConstants.MAX_BLOCKS % 2 == 0 ? CreatureConstants.MAX_BLOCKS - 1 :
+        CreatureConstants.MAX_BLOCKS;
+    int blockCount = 3 + 2 * rand.nextInt((maxOdd - 3) / 2 + 1);
+
+    addRoot();
+    addAvailableEdges(availableEdges, 0, 1);
+
+    //while you can still add blocks and you haven't tried to add a block at all the edges
+    while(body.size() < blockCount && !availableEdges.isEmpty())
+    {
+      RandCreature.IdSurfaceEdge ise = availableEdges.get(rand.nextInt(availableEdges.size()));
+      if(addMirroredBlocks(ise))
+      {
+        addAvailableEdges(availableEdges, body.size()-2, 1);
+      }
+      else
+      {
+        availableEdges.remove(ise);
+      }
+    }
+    return makeDNA();
+  }
+
+  /**
+   * Random sized, axis aligned root at 0,0,0.
+   */
+  private void addRoot()
+  {
+    BlockPlan root = new BlockPlan(-1, new Vector3f(0f,0f,0f), randomSize());
+    body.add(root);
+  }
+
+  /**
+   * Try to add a block joined edge to edge with its parent, RandCreature's
+   * addRandomBlock.
+   * @param ise     parent, surface and edge to add to.
+   * @return        false if the block would intersect another one.
+   */
+  private boolean addRandomBlock(RandCreature.IdSurfaceEdge ise)
+  {
+    BlockPlan parent = body.get(ise.id);
+    Vector3f childSize = randomSize();
+    Vector3f parentJoint = new Vector3f(0f,0f,0f);
+    Vector3f childJoint = new Vector3f(0f,0f,0f);
+    Vector3f rotationAxis = new Vector3f(0f,0f,0f);
+
+    //choose the child's surface and edge to make a joint to based on the parent's surface and edge
+    int childSurface = RandCreature.correspondingChildSurface(ise.surface);
+    int childEdge = RandCreature.correspondingChildEdge(rand, ise.edge);
+
+    RandCreature.findVectorToEdge(rand, parent.size, ise.edge, ise.surface, parentJoint, rotationAxis);
+    RandCreature.findVectorToEdge(rand, childSize, childEdge, childSurface, childJoint, rotationAxis);
+
+    BlockPlan block = placeBlock(ise.id, childSize, parentJoint, childJoint, rotationAxis);
+    if(intersects(block, body.size()))
+    {
+      return false;
+    }
+    body.add(block);
+    addRandomNeurons(block);
+    return true;
+  }
+
+  /**
+   * Try to add a block and its mirror image, LegCreature's addMirroredBlocks.
+   * @param ise     parent, surface and edge to add to.  Only the first of each
+   *                pair gets edges, the second is the mirror's parent.
+   * @return        false if either block would intersect another one.
+   */
+  private boolean addMirroredBlocks(RandCreature.IdSurfaceEdge ise)
+  {
+    //if the parent is the root, then both children will be children of the root
+    int mirrorParentID = ise.id == 0 ? 0 : ise.id + 1;
+    BlockPlan parent = body.get(ise.id);
+
+    //find the an edge on the child block to make a joint to
+    int childEdge = LegCreature.findChildEdge(rand, ise.edge);
+    Vector3f childSize = randomSize();
+
+    Vector3f parentJoint = new Vector3f(0f,0f,0f);
+    Vector3f childJoint = new Vector3f(0f,0f,0f);
+    Vector3f parentMirrorJoint = new Vector3f(0f,0f,0f);
+    Vector3f childMirrorJoint = new Vector3f(0f,0f,0f);
+    Vector3f rotationAxis = new Vector3f(0f,0f,0f);
+
+    //legs always hang off the bottom of the parent by the top of the child
+    RandCreature.findVectorToEdge(rand, parent.size, ise.edge, 1, parentJoint, rotationAxis);
+    RandCreature.findVectorToEdge(rand, childSize, childEdge, 0, childJoint, rotationAxis);
+
+    //mirror the joints so that you can add a mirrored block to the otherside of the creature
+    LegCreature.findMirrorVector(ise.edge, parentJoint, parentMirrorJoint);
+    LegCreature.findMirrorVector(childEdge, childJoint, childMirrorJoint);
+
+    BlockPlan block = placeBlock(ise.id, childSize, parentJoint, childJoint, rotationAxis);
+    if(intersects(block, body.size()))
+    {
+      return false;
+    }
+    body.add(block);
+    BlockPlan mirror = placeBlock(mirrorParentID, new Vector3f(childSize), parentMirrorJoint, childMirrorJoint,
+                                  rotationAxis);
+    //LegCreature only checked the mirror, the first of the pair gets checked too now
+    if(intersects(mirror, body.size()))
+    {
+      body.remove(body.size()-1);
+      return false;
+    }
+    body.add(mirror);
+    addMirroredNeurons(block, mirror);
+    return true;
+  }
+
+  /**
+   * Work out where a block joined to a parent would be, same as
+   * Creature.addBlock.  Everything here is axis aligned.
+   */
+  private BlockPlan placeBlock(int parentID, Vector3f size, Vector3f parentJoint, Vector3f childJoint,
+                               Vector3f rotationAxis)
+  {
+    BlockPlan parent = body.get(parentID);
+    Vector3f center = parent.box.localToWorld(parentJoint, new Vector3f());
+    center.subtractLocal(AXIS_ALIGNED.mult(childJoint));
+    BlockPlan block = new BlockPlan(parentID, center, size);
+    block.jointA = parentJoint;
+    block.jointB = childJoint;
+    block.axis = new Vector3f(rotationAxis);
+    return block;
+  }
+
+  /**
+   * Check a new block against the first count blocks of the body, apart from
+   * its parent, the same way RandCreature.removeIfIntersection does (touching
+   * counts).
+   */
+  private boolean intersects(BlockPlan block, int count)
+  {
+    for(int i = 0; i < count; ++i)
+    {
+      if(i != block.parentID && block.box.touches(body.get(i).box))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Random half size, the same for every block RandCreature makes.
+   */
+  private Vector3f randomSize()
+  {
+    Vector3f size = new Vector3f(0f,0f,0f);
+    size.x = ((rand.nextInt(CreatureConstants.MAX_BLOCK_SIZE)+CreatureConstants.MIN_BLOCK_SIZE) + rand.nextFloat())/2;
+    size.y = ((rand.nextInt(CreatureConstants.MAX_BLOCK_SIZE)+CreatureConstants.MIN_BLOCK_SIZE) + rand.nextFloat())/2;
+    size.z = ((rand.nextInt(CreatureConstants.MAX_BLOCK_SIZE)+CreatureConstants.MIN_BLOCK_SIZE) + rand.nextFloat())/2;
+    return size;
+  }
+
+  /**
+   * Add a random number of neurons to a block, RandCreature.addRandomNeurons
+   */
+  private void addRandomNeurons(BlockPlan block)
+  {
+    //choose a random number of neurons to add to a block
+    int numberNeurons = rand.nextInt(CreatureConstants.MAX_NEURON_PER_BLOCK)+1;
+    float maxImpulse = jointMaxImpulse(block);
+    for(int i = 0; i <= numberNeurons; ++i)
+    {
+      float seconds = randomSeconds();
+      //randomly choose negative or positive impulse
+      float impulse = rand.nextInt(2) == 1 ? -maxImpulse : maxImpulse;
+      block.neurons.add(makeNeuron(seconds, impulse));
+    }
+  }
+
+  /**
+   * Add mirrored neurons to a pair of blocks, LegCreature.addMirroredNeurons.
+   * If one block gets a neuron with +impulse, then the other block will get
+   * the same neuron but with -impulse.
+   */
+  private void addMirroredNeurons(BlockPlan block, BlockPlan mirror)
+  {
+    int numberNeurons = rand.nextInt(CreatureConstants.MAX_NEURON_PER_BLOCK)+1;
+    float maxImpulse = jointMaxImpulse(block);
+    for(int i = 0; i <= numberNeurons; ++i)
+    {
+      float seconds = randomSeconds();
+      if(rand.nextInt(2) != 0)
+      {
+        maxImpulse = -maxImpulse;
+      }
+      //both fire at the same time
+      block.neurons.add(makeNeuron(seconds, maxImpulse));
+      mirror.neurons.add(makeNeuron(seconds, -maxImpulse));
+    }
+  }
+
+  private float randomSeconds()
+  {
+    float seconds = rand.nextInt(CreatureConstants.MAX_NEURON_SECONDS - CreatureConstants.MIN_NEURON_SECONDS) +
+        CreatureConstants.MIN_NEURON_SECONDS;
+    return seconds + rand.nextFloat();
+  }
+
+  private static Neuron makeNeuron(float seconds, float impulse)
+  {
+    Neuron n = new Neuron(EnumNeuronInput.TIME, null, EnumNeuronInput.CONSTANT, EnumNeuronInput.CONSTANT, null);
+    n.setInputValue(Neuron.C, seconds);
+    n.setInputValue(Neuron.D, impulse);
+    return n;
+  }
+
+  /**
+   * Block.getJointMaxImpulse without the block, it goes by the parent's
+   * full sizes.
+   */
+  private float jointMaxImpulse(BlockPlan block)
+  {
+    Vector3f size = body.get(block.parentID).size;
+    float x = size.x*2, y = size.y*2, z = size.z*2;
+    return x*y + y*z + z*x;
+  }
+
+  /**
+   * Add every surface from firstSurface up and every edge of a block to the
+   * places new blocks can go.
+   */
+  private static void addAvailableEdges(ArrayList<RandCreature.IdSurfaceEdge> edges, int id, int firstSurface)
+  {
+    for(int i = firstSurface; i < 6; ++i)
+    {
+      for(int j = 0; j < 4; ++j)
+      {
+        edges.add(new RandCreature.IdSurfaceEdge(id, i, j));
+      }
+    }
+  }
+
+  /**
+   * Turn the body into DNA, what new DNA(RandCreature) does.
+   */
+  private DNA makeDNA()
+  {
+    DNA dna = new DNA();
+    for(int i = 0; i < body.size(); ++i)
+    {
+      BlockPlan block = body.get(i);
+      Vector3f[] sizeAndShape = new Vector3f[BlockVector.values().length];
+      sizeAndShape[BlockVector.CENTER.ordinal()] = block.center;
+      sizeAndShape[BlockVector.SIZE.ordinal()] = block.size;
+      sizeAndShape[BlockVector.JOINT_A.ordinal()] = block.jointA;
+      sizeAndShape[BlockVector.JOINT_B.ordinal()] = block.jointB;
+      sizeAndShape[BlockVector.AXIS_A.ordinal()] = block.axis;
+      sizeAndShape[BlockVector.AXIS_B.ordinal()] = block.axis;
+      dna.addBlockToDNA(i, block.parentID, sizeAndShape, CreatureConstants.IDENTITY_QUATERNION, block.neurons);
+    }
+    dna.bumpUp();
+    body.clear();
+    return dna;
+  }
+
+  /**
+   * A block that hasn't been built, just what goes into its DNA.
+   */
+  private static class BlockPlan
+  {
+    final int parentID;
+    final Vector3f center;
+    final Vector3f size;
+    final OrientedBox box;
+    //null for the root
+    Vector3f jointA, jointB, axis;
+    final ArrayList<Neuron> neurons = new ArrayList<>();
+
+    BlockPlan(int parentID, Vector3f center, Vector3f size)
+    {
+      this.parentID = parentID;
+      this.center = center;
+      this.size = size;
+      this.box = new OrientedBox(center, size, AXIS_ALIGNED);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package vcreature.creatureUtil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Whitespace separated tokens of a text population file.  Does the same job
+ * Scanner did in DNAio without the regular expressions, and reads through a
+ * buffer so the file never has to be in memory all at once.
+ */
+final class Tokens
+{
+  private static final int BUFFER_CHARS = 1 << 16;
+
+  private final Reader in;
+  private final char[] buffer = new char[BUFFER_CHARS];
+  private final StringBuilder token = new StringBuilder();
+  private final ArrayDeque<String> ahead = new ArrayDeque<>();
+  private int index = 0;
+  private int end = 0;
+
+  Tokens(Reader in)
+  {
+    this.in = in;
+  }
+
+  boolean hasNext() throws IOException
+  {
+    return peek(0) != null;
+  }
+
+  boolean hasNextInt() throws IOException
+  {
+    String next = peek(0);
+    if(next == null)
+    {
+      return false;
+    }
+    try
+    {
+      Integer.parseInt(next);
+      return true;
+    }
+    catch(NumberFormatException e)
+    {
+      return false;
+    }
+  }
+
+  String next() throws IOException
+  {
+    if(peek(0) == null)
+    {
+      throw new NumberFormatException("file ended early");
+    }
+    return ahead.poll();
+  }
+
+  int nextInt() throws IOException
+  {
+    return Integer.parseInt(next());
+  }
+
+  float nextFloat() throws IOException
+  {
+    return Float.parseFloat(next());
+  }
+
+  /**
+   * Look at a token without taking it.
+   * @param i     0 for the next token, 1 for the one after and so on.
+   * @return      the token or null if the file ends first.
+   */
+  String peek(int i) throws IOException
+  {
+    while(ahead.size() <= i)
+    {
+      String next = read();
+      if(next == null)
+      {
+        return null;
+      }
+      ahead.add(next);
+    }
+    Iterator<String> tokens = ahead.iterator();
+    for(int skip = 0; skip < i; ++skip)
+    {
+      tokens.next();
+    }
+    return tokens.next();
+  }
+
+  private String read() throws IOException
+  {
+    token.setLength(0);
+    while(true)
+    {
+      if(index == end)
+      {
+        end = in.read(buffer);
+        index = 0;
+        if(end < 0)
+        {
+          end = 0;
+          break;
+        }
+      }
+      char c = buffer[index++];
+      if(!Character.isWhitespace(c))
+      {
+        token.append(c);
+      }
+      else if(token.length() > 0)
+      {
+        break;
+      }
+    }
+    return token.length() > 0 ? token.toString() : null;
+  }
+}
@@ -4,12 +4,14 @@ import com.google.common.collect.Iterables;
 import com.jme3.math.Vector3f;
 import vcreature.creatureUtil.CreatureConstants;
 import vcreature.creatureUtil.DNA;
+import vcreature.creatureUtil.MutationPath;
 import vcreature.mainSimulation.Population;
 import vcreature.phenotype.*;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 /**
  * Hill Climbing picks a random blocks from a DNA to mutate on.
  * Hill Climbing will then pick to either mutate the size of the block,
@@ -38,18 +40,20 @@ public class HillClimbing
           EnumNeuronInput.CONSTANT, EnumNeuronInput.TIME};
   private final int NEURON_COUNT = NEURON_INPUT.length;
   private boolean mutationNeeded;
-  private String mutationSequence = "";
-  private boolean followPathSequence;
-  private LinkedList<String> pathSequence;
+  //Below this many strands the threads cost more than the mutations
+  private static final int PARALLEL_THRESHOLD = 256;
 
   /**
-   * Sets up Hill Climbing to perform Hill Climbing on the DNA population
+   * Sets up Hill Climbing to perform Hill Climbing on the DNA population.  The
+   * generator should come from the run's seed, so that a seeded run mutates the
+   * same way every time
    * @param population ArrayList of ArrayList of DNAs, to keep track of fitness history
+   * @param generator random number generator to pick the mutations with
    */
-  public HillClimbing(Population population)
+  public HillClimbing(Population population, Random generator)
   {
     this.population = population;
-    generator = new Random();
+    this.generator = generator;
     MutationThresholdCount = 0;
     overallAvgFitness = 0f;
     previousOverallAvgFitness = 0f;
@@ -57,318 +61,373 @@ public class HillClimbing
   }
 
   /**
-   * Checks to see if the new fitness of the sample DNA
-   * is better than the previous DNA's fitness
-   * @param sampleDNA that is being mutated
-   * @param previousDNA of last generation to test against
-   * @return if new fitness is better than old fitness
+   * Will check if the entire population's avg fitness is getting better, worse,
+   * or increase is small.  If overall avg fitness is worse than the last generation's
+   * overall avg fitness, than the counter for how many times a decrease is allowed is
+   * incremented.  If decrease happens 3 times, then a mutation is needed.
+   * If the abs deviation between this generation and last generation's fitness, is less
+   * than the stall deviation for a population, then a mutation is needed.
    */
-  private boolean fitnessTest(DNA sampleDNA, DNA previousDNA)
+  private void checkAvgFitnessDeviation()
   {
-    if(previousDNA == null) return true;
-    float fitness = sampleDNA.getFitness();
-    overallAvgFitness += fitness;
-    return fitness > previousDNA.getFitness();
+    if(overallAvgFitness < previousOverallAvgFitness) MutationThresholdCount++;
+    float deviation = overallAvgFitness - previousOverallAvgFitness;
+    if(Math.abs(deviation) < POPULATION_DEVIATION_THRESHOLD) MutationThresholdCount++;
+    if(MutationThresholdCount == 5) mutationNeeded = true;
   }
 
   /**
-   * Mutates a block size by altering the dna
-   * Will pick x,y, or z at random and pick a random
-   * float change up to 1.0 to add to the selected direction
-   * @param sampleDNA DNA that is being mutated
-   * @param size original size of the block in the dna
-   * @param blockID the ID of the block being mutated
+   * Checks to see if Hill Climbing is in need of the
+   * genetic algorithm to do mutations.
+   * @return if mutation is needed
    */
-  private void mutateBlockSize(DNA sampleDNA, Vector3f size, int blockID)
+  public boolean isMutationNeeded()
   {
-    float x = 0;
-    float y = 0;
-    float z = 0;
-    float temp;
-    float sizeChange = generator.nextFloat();//will get float between 0.0 and 1.0
-
-    if(sizeChange == 0.0) sizeChange += .1;
-
-    boolean addOp;
+    return mutationNeeded;
+  }
 
-    if(followPathSequence) addOp = Boolean.parseBoolean(pathSequence.remove());
-    else addOp = generator.nextBoolean();
+  /**
+   * Gets the over all avg fitness for the entire population
+   * @return avg fitness for all DNAs in population
+   */
+  public float getPopulationAvgFitness(){return overallAvgFitness;}
 
-    mutationSequence = mutationSequence + addOp;
+  /**
+   * Will perform the hill climbing on the given population when called.
+   * Every strand gets its own random number generator split off from this
+   * one's, so the strands can be mutated on different threads and a seeded
+   * run still mutates the same way every time.
+   *
+   * @return Returns the mutated population back to the Simulation
+   */
+  public Population hillClimb() {
+    int totalNumDNA = population.size();
+    SplittableRandom root = new SplittableRandom(generator.nextLong());
+    SplittableRandom[] strandGenerators = new SplittableRandom[totalNumDNA];
+    for(int i = 0; i < totalNumDNA; i++) strandGenerators[i] = root.split();
 
+    float[] fitnesses = new float[totalNumDNA];
+    IntStream strands = IntStream.range(0, totalNumDNA);
+    if(totalNumDNA >= PARALLEL_THRESHOLD) strands = strands.parallel();
+    strands.forEach(i -> fitnesses[i] = new StrandClimber(strandGenerators[i]).climb(population.get(i)));
 
-    boolean sizeNot10 = size.getX() < CreatureConstants.MAX_BLOCK_SIZE && size.getY() < CreatureConstants.MAX_BLOCK_SIZE && size.getZ() < CreatureConstants.MAX_BLOCK_SIZE;
-    boolean sizeNot1 = size.getX() > CreatureConstants.MIN_BLOCK_SIZE && size.getY() > CreatureConstants.MIN_BLOCK_SIZE && size.getZ() > CreatureConstants.MIN_BLOCK_SIZE;
+    //Added up in strand order so the average doesn't depend on the threads
+    overallAvgFitness = 0f;
+    for(float fitness : fitnesses) overallAvgFitness += fitness;
+    overallAvgFitness /= totalNumDNA;
+    checkAvgFitnessDeviation();
+    previousOverallAvgFitness = overallAvgFitness;
 
-    switch (generator.nextInt(3))
-    {
-      case(0):
-        temp = x;
-        if(addOp && sizeNot10)
-        {
-          if((temp + sizeChange) < CreatureConstants.MAX_BLOCK_SIZE) x += sizeChange;
-        }
-        else if(sizeNot1)
-        {
-          if((temp - sizeChange) > CreatureConstants.MIN_BLOCK_SIZE) x -= sizeChange;
-        }
-        break;
-      case(1):
-        temp = y;
-        if(addOp && sizeNot10)
-        {
-          if((temp + sizeChange) < CreatureConstants.MAX_BLOCK_SIZE) y += sizeChange;
-        }
-        else if(sizeNot1)
-        {
-          if((temp - sizeChange) > CreatureConstants.MIN_BLOCK_SIZE) y -= sizeChange;
-        }
-        break;
-      default:
-        temp = z;
-        if(addOp && sizeNot10)
-        {
-          if((temp + sizeChange) < CreatureConstants.MAX_BLOCK_SIZE) z += sizeChange;
-        }
-        else if(sizeNot1)
-        {
-          if((temp - sizeChange) > CreatureConstants.MIN_BLOCK_SIZE) z -= sizeChange;
-        }
-        break;
-    }
-    size.addLocal(x, y, z);
-    sampleDNA.alterVector(size, blockID, BlockVector.SIZE);
-    sampleDNA.alterJoints(blockID);
+    return population;
   }
 
   /**
-   * Mutates a block's neuron input type
-   * @param mutatedDNA DNA being mutated
-   * @param neuronID which neuron of the block being mutated
-   * @param blockID ID of block
+   * Hill climb a single strand right away instead of the whole population at
+   * once, for the steady state GA.  Doesn't count towards isMutationNeeded.
+   * Not thread safe, the caller has to make sure only one thread calls it at
+   * a time.
+   * @param strand strand whose last DNA has just been given a fitness
    */
-  private void mutateNeuronInput(DNA mutatedDNA, int neuronID, int blockID)
+  public void climb(Population.Strand strand)
   {
-    int mutatingNeuron = generator.nextInt(NEURON_COUNT);
-    int newType = mutatingNeuron; //New Neuron type
-
-    while(newType == mutatingNeuron) newType = generator.nextInt(NEURON_COUNT);
-
-    EnumNeuronInput newInput = NEURON_INPUT[newType];
-
-    mutatedDNA.alterNeuronInput(blockID,neuronID,mutatingNeuron,newInput);
+    new StrandClimber(new SplittableRandom(generator.nextLong())).climb(strand);
   }
 
   /**
-   * Mutates a block's neuron constant value
-   * @param mutatedDNA DNA being mutated
-   * @param neuronID which neuron of the block being mutated
-   * @param blockID ID of block
+   * Mutates one strand.  Holds everything that used to be shared between
+   * strands while the population was climbed one strand at a time.
    */
-  private void mutateNeuronConstant(DNA mutatedDNA, int neuronID, int blockID)
+  private class StrandClimber
   {
-    int mutatingNeuron = generator.nextInt(NEURON_COUNT);
-    float mutatingConstant = mutatedDNA.getNeuronConstant(blockID,neuronID,mutatingNeuron);
+    private final SplittableRandom generator;
+    private long mutationPath = MutationPath.NONE;
+    private boolean followPathSequence = false;
+    private long followedPath = MutationPath.NONE;
+    private float fitness = 0f;
+
+    StrandClimber(SplittableRandom generator)
+    {
+      this.generator = generator;
+    }
+
+    /**
+     * Same as Random.nextFloat, SplittableRandom doesn't have one.
+     */
+    private float nextFloat()
+    {
+      return (generator.nextInt() >>> 8) / (float) (1 << 24);
+    }
 
-    if(mutatingConstant != -1)
+    /**
+     * Checks to see if the new fitness of the sample DNA
+     * is better than the previous DNA's fitness
+     * @param sampleDNA that is being mutated
+     * @param previousDNA of last generation to test against
+     * @return if new fitness is better than old fitness
+     */
+    private boolean fitnessTest(DNA sampleDNA, DNA previousDNA)
     {
-      float mutateChange = generator.nextFloat();
+      if(previousDNA == null) return true;
+      fitness = sampleDNA.getFitness();
+      return fitness > previousDNA.getFitness();
+    }
+
+    /**
+     * Mutates a block size by altering the dna
+     * Will pick x,y, or z at random and pick a random
+     * float change up to 1.0 to add to the selected direction
+     * @param sampleDNA DNA that is being mutated
+     * @param size original size of the block in the dna
+     * @param blockID the ID of the block being mutated
+     */
+    private void mutateBlockSize(DNA sampleDNA, Vector3f size, int blockID)
+    {
+      float x = 0;
+      float y = 0;
+      float z = 0;
+      float temp;
+      float sizeChange = nextFloat();//will get float between 0.0 and 1.0
+
+      if(sizeChange == 0.0) sizeChange += .1;
+
       boolean addOp;
 
-      if(followPathSequence) addOp = Boolean.parseBoolean(pathSequence.remove());
+      if(followPathSequence && MutationPath.hasAddOp(followedPath)) addOp = MutationPath.getAddOp(followedPath);
       else addOp = generator.nextBoolean();
 
-      mutationSequence = mutationSequence + " " + addOp;
+      mutationPath = MutationPath.withAddOp(mutationPath, addOp);
 
 
-      if(addOp) mutatingConstant += mutateChange;
-      else if((mutatingConstant -= mutateChange) < 0) mutatingConstant = 0;
+      boolean sizeNot10 = size.getX() < CreatureConstants.MAX_BLOCK_SIZE && size.getY() < CreatureConstants.MAX_BLOCK_SIZE && size.getZ() < CreatureConstants.MAX_BLOCK_SIZE;
+      boolean sizeNot1 = size.getX() > CreatureConstants.MIN_BLOCK_SIZE && size.getY() > CreatureConstants.MIN_BLOCK_SIZE && size.getZ() > CreatureConstants.MIN_BLOCK_SIZE;
 
-      mutatedDNA.alterNeuronConstant(blockID,neuronID,mutatingNeuron,mutatingConstant);
+      switch (generator.nextInt(3))
+      {
+        case(0):
+          temp = x;
+          if(addOp && sizeNot10)
+          {
+            if((temp + sizeChange) < CreatureConstants.MAX_BLOCK_SIZE) x += sizeChange;
+          }
+          else if(sizeNot1)
+          {
+            if((temp - sizeChange) > CreatureConstants.MIN_BLOCK_SIZE) x -= sizeChange;
+          }
+          break;
+        case(1):
+          temp = y;
+          if(addOp && sizeNot10)
+          {
+            if((temp + sizeChange) < CreatureConstants.MAX_BLOCK_SIZE) y += sizeChange;
+          }
+          else if(sizeNot1)
+          {
+            if((temp - sizeChange) > CreatureConstants.MIN_BLOCK_SIZE) y -= sizeChange;
+          }
+          break;
+        default:
+          temp = z;
+          if(addOp && sizeNot10)
+          {
+            if((temp + sizeChange) < CreatureConstants.MAX_BLOCK_SIZE) z += sizeChange;
+          }
+          else if(sizeNot1)
+          {
+            if((temp - sizeChange) > CreatureConstants.MIN_BLOCK_SIZE) z -= sizeChange;
+          }
+          break;
+      }
+      size.addLocal(x, y, z);
+      sampleDNA.alterVector(size, blockID, BlockVector.SIZE);
+      sampleDNA.alterJoints(blockID);
     }
-  }
 
-  /**
-   * Swaps 2 neuron inputs of a block
-   * @param mutatedDNA DNA being mutated
-   * @param neuronID which neuron of the block being mutated
-   * @param blockID ID of block
-   */
-  private void swapNeuronInput(DNA mutatedDNA, int neuronID, int blockID)
-  {
-    int neuronA = generator.nextInt(NEURON_COUNT);
-    int neuronB = neuronA;
+    /**
+     * Mutates a block's neuron input type
+     * @param mutatedDNA DNA being mutated
+     * @param neuronID which neuron of the block being mutated
+     * @param blockID ID of block
+     */
+    private void mutateNeuronInput(DNA mutatedDNA, int neuronID, int blockID)
+    {
+      int mutatingNeuron = generator.nextInt(NEURON_COUNT);
+      int newType = mutatingNeuron; //New Neuron type
 
-    while(neuronB == neuronA) neuronB = generator.nextInt(NEURON_COUNT);
+      while(newType == mutatingNeuron) newType = generator.nextInt(NEURON_COUNT);
 
-    EnumNeuronInput inputA = NEURON_INPUT[neuronA];
-    EnumNeuronInput inputB = NEURON_INPUT[neuronB];
+      EnumNeuronInput newInput = NEURON_INPUT[newType];
 
-    mutatedDNA.alterNeuronInput(blockID,neuronID,neuronA,inputB);
-    mutatedDNA.alterNeuronInput(blockID,neuronID,neuronB,inputA);
-  }
+      mutatedDNA.alterNeuronInput(blockID,neuronID,mutatingNeuron,newInput);
+    }
 
-  /**
-   * Swaps 2 neuron constants of a block
-   * @param mutatedDNA DNA being mutated
-   * @param neuronID which neuron of block being mutated
-   * @param blockID ID of block
-   */
-  private void swapNeuronConstants(DNA mutatedDNA, int neuronID, int blockID)
-  {
-    int neuronA = generator.nextInt(NEURON_COUNT);
-    int neuronB = neuronA;
+    /**
+     * Mutates a block's neuron constant value
+     * @param mutatedDNA DNA being mutated
+     * @param neuronID which neuron of the block being mutated
+     * @param blockID ID of block
+     */
+    private void mutateNeuronConstant(DNA mutatedDNA, int neuronID, int blockID)
+    {
+      int mutatingNeuron = generator.nextInt(NEURON_COUNT);
+      float mutatingConstant = mutatedDNA.getNeuronConstant(blockID,neuronID,mutatingNeuron);
 
-    while(neuronB == neuronA) neuronB = generator.nextInt(NEURON_COUNT);
+      if(mutatingConstant != -1)
+      {
+        float mutateChange = nextFloat();
+        boolean addOp;
 
-    float constantA = mutatedDNA.getNeuronConstant(blockID,neuronID,neuronA);
-    float constantB = mutatedDNA.getNeuronConstant(blockID,neuronID,neuronB);
+        if(followPathSequence && MutationPath.hasAddOp(followedPath)) addOp = MutationPath.getAddOp(followedPath);
+        else addOp = generator.nextBoolean();
 
-    if(constantA != -1 && constantB != -1)
-    {
-      mutatedDNA.alterNeuronConstant(blockID,neuronID,neuronA,constantB);
-      mutatedDNA.alterNeuronConstant(blockID,neuronID,neuronB,constantA);
-    }
-  }
+        mutationPath = MutationPath.withAddOp(mutationPath, addOp);
 
-  /**
-   * Mutates a DNA's block's neuron
-   * @param mutatedDNA DNA being mutated
-   * @param blockID ID of block
-   */
-  private void mutateBlockNeuron(DNA mutatedDNA, int blockID)
-  {
-    int numOfNeurons = mutatedDNA.getNumRules(blockID);
-    int neuronID;
 
-    if(followPathSequence) neuronID = Integer.parseInt(pathSequence.remove());
-    else neuronID= generator.nextInt(numOfNeurons);
+        if(addOp) mutatingConstant += mutateChange;
+        else if((mutatingConstant -= mutateChange) < 0) mutatingConstant = 0;
+
+        mutatedDNA.alterNeuronConstant(blockID,neuronID,mutatingNeuron,mutatingConstant);
+      }
+    }
 
-    mutationSequence = mutationSequence + neuronID + " ";
+    /**
+     * Swaps 2 neuron inputs of a block
+     * @param mutatedDNA DNA being mutated
+     * @param neuronID which neuron of the block being mutated
+     * @param blockID ID of block
+     */
+    private void swapNeuronInput(DNA mutatedDNA, int neuronID, int blockID)
+    {
+      int neuronA = generator.nextInt(NEURON_COUNT);
+      int neuronB = neuronA;
 
-    int mutationType;
-    if(followPathSequence) mutationType = Integer.parseInt(pathSequence.remove());
-    else mutationType = generator.nextInt(4);
+      while(neuronB == neuronA) neuronB = generator.nextInt(NEURON_COUNT);
 
-    mutationSequence = mutationSequence + mutationType;
+      EnumNeuronInput inputA = NEURON_INPUT[neuronA];
+      EnumNeuronInput inputB = NEURON_INPUT[neuronB];
 
-    switch(mutationType)
-    {
-      case(0):
-        mutateNeuronInput(mutatedDNA,neuronID,blockID);
-        break;
-      case(1):
-        mutateNeuronConstant(mutatedDNA,neuronID,blockID);
-        break;
-      case(2):
-        swapNeuronInput(mutatedDNA,neuronID,blockID);
-        break;
-      default:
-        swapNeuronConstants(mutatedDNA,neuronID,blockID);
-        break;
+      mutatedDNA.alterNeuronInput(blockID,neuronID,neuronA,inputB);
+      mutatedDNA.alterNeuronInput(blockID,neuronID,neuronB,inputA);
     }
-  }
 
-  /**
-   * Mutates the DNA of the target block given by the ID, and will
-   * do the mutation given by the mutation type
-   * @param originalDNA DNA of the creature before mutation
-   * @param mutatedDNA DNA copy of the originalDNA to mutate without losing information
-   * @param targetBlockID ID of the block that is being mutated
-   * @param mutationType which mutation will be done
-   */
-  private void mutateBlock(DNA originalDNA, DNA mutatedDNA, int targetBlockID, int mutationType)
-  {
-    Vector3f size = new Vector3f(originalDNA.getBlockSize(targetBlockID));
+    /**
+     * Swaps 2 neuron constants of a block
+     * @param mutatedDNA DNA being mutated
+     * @param neuronID which neuron of block being mutated
+     * @param blockID ID of block
+     */
+    private void swapNeuronConstants(DNA mutatedDNA, int neuronID, int blockID)
+    {
+      int neuronA = generator.nextInt(NEURON_COUNT);
+      int neuronB = neuronA;
 
-    if(targetBlockID == 0) mutationType = 1;
+      while(neuronB == neuronA) neuronB = generator.nextInt(NEURON_COUNT);
 
-    mutationSequence = mutationSequence + mutationType + " ";
+      float constantA = mutatedDNA.getNeuronConstant(blockID,neuronID,neuronA);
+      float constantB = mutatedDNA.getNeuronConstant(blockID,neuronID,neuronB);
 
+      if(constantA != -1 && constantB != -1)
+      {
+        mutatedDNA.alterNeuronConstant(blockID,neuronID,neuronA,constantB);
+        mutatedDNA.alterNeuronConstant(blockID,neuronID,neuronB,constantA);
+      }
+    }
 
-    switch (mutationType)
+    /**
+     * Mutates a DNA's block's neuron
+     * @param mutatedDNA DNA being mutated
+     * @param blockID ID of block
+     */
+    private void mutateBlockNeuron(DNA mutatedDNA, int blockID)
     {
-      case 0:
-        mutateBlockNeuron(mutatedDNA, targetBlockID);
-        break;
-      default:
-        mutateBlockSize(mutatedDNA, size, targetBlockID);
-        break;
-    }
-  }
+      int numOfNeurons = mutatedDNA.getNumRules(blockID);
+      int neuronID;
 
-  /**
-   * Will check if the entire population's avg fitness is getting better, worse,
-   * or increase is small.  If overall avg fitness is worse than the last generation's
-   * overall avg fitness, than the counter for how many times a decrease is allowed is
-   * incremented.  If decrease happens 3 times, then a mutation is needed.
-   * If the abs deviation between this generation and last generation's fitness, is less
-   * than the stall deviation for a population, then a mutation is needed.
-   */
-  private void checkAvgFitnessDeviation()
-  {
-    if(overallAvgFitness < previousOverallAvgFitness) MutationThresholdCount++;
-    float deviation = overallAvgFitness - previousOverallAvgFitness;
-    if(Math.abs(deviation) < POPULATION_DEVIATION_THRESHOLD) MutationThresholdCount++;
-    if(MutationThresholdCount == 5) mutationNeeded = true;
-  }
+      if(followPathSequence && MutationPath.hasNeuron(followedPath)) neuronID = MutationPath.getNeuronID(followedPath);
+      else neuronID= generator.nextInt(numOfNeurons);
 
-  /**
-   * Checks to see if Hill Climbing is in need of the
-   * genetic algorithm to do mutations.
-   * @return if mutation is needed
-   */
-  public boolean isMutationNeeded()
-  {
-    return mutationNeeded;
-  }
+      int mutationType;
+      if(followPathSequence && MutationPath.hasNeuron(followedPath))
+        mutationType = MutationPath.getNeuronMutation(followedPath);
+      else mutationType = generator.nextInt(4);
 
-  /**
-   * Gets the over all avg fitness for the entire population
-   * @return avg fitness for all DNAs in population
-   */
-  public float getPopulationAvgFitness(){return overallAvgFitness;}
+      mutationPath = MutationPath.withNeuron(mutationPath, neuronID, mutationType);
 
-  /**
-   * Will perform the hill climbing on the given population when called.
-   *
-   * @return Returns the mutated population back to the Simulation
-   */
-  public Population hillClimb() {
-    int blockID;
-    int dnaListSize;
-    int mutationType; //0 for neuron mutation, else size mutation of block
-    int totalNumDNA = population.size();
+      switch(mutationType)
+      {
+        case(0):
+          mutateNeuronInput(mutatedDNA,neuronID,blockID);
+          break;
+        case(1):
+          mutateNeuronConstant(mutatedDNA,neuronID,blockID);
+          break;
+        case(2):
+          swapNeuronInput(mutatedDNA,neuronID,blockID);
+          break;
+        default:
+          swapNeuronConstants(mutatedDNA,neuronID,blockID);
+          break;
+      }
+    }
 
-    DNA dna;
-    DNA previousDNA;
-    DNA mutatedDNA;
+    /**
+     * Mutates the DNA of the target block given by the ID, and will
+     * do the mutation given by the mutation type
+     * @param originalDNA DNA of the creature before mutation
+     * @param mutatedDNA DNA copy of the originalDNA to mutate without losing information
+     * @param targetBlockID ID of the block that is being mutated
+     * @param mutationType which mutation will be done
+     */
+    private void mutateBlock(DNA originalDNA, DNA mutatedDNA, int targetBlockID, int mutationType)
+    {
+      Vector3f size = new Vector3f(originalDNA.getBlockSize(targetBlockID));
 
-    overallAvgFitness = 0f;
+      if(targetBlockID == 0) mutationType = 1;
 
-    for(int i = 0; i < totalNumDNA; i++)
+      mutationPath = MutationPath.of(targetBlockID, mutationType);
+
+
+      switch (mutationType)
+      {
+        case 0:
+          mutateBlockNeuron(mutatedDNA, targetBlockID);
+          break;
+        default:
+          mutateBlockSize(mutatedDNA, size, targetBlockID);
+          break;
+      }
+    }
+
+    /**
+     * Keep or roll back the strand's last DNA and add a mutated copy.
+     * @param strand strand to climb
+     * @return fitness of the last DNA to add to the population average, 0 if
+     * it's the strand's first one
+     */
+    float climb(Population.Strand strand)
     {
-      dna = population.get(i).getLast();
-      dnaListSize = population.get(i).size();
-      pathSequence = new LinkedList<String>();
-      followPathSequence = false;
-      if(dnaListSize > 1) previousDNA = population.get(i).get(dnaListSize - 2);
+      int blockID;
+      int mutationType; //0 for neuron mutation, else size mutation of block
+      DNA previousDNA;
+      DNA mutatedDNA;
+
+      DNA dna = strand.getLast();
+      int dnaListSize = strand.size();
+      if(dnaListSize > 1) previousDNA = strand.get(dnaListSize - 2);
       else previousDNA = null;
 
       final int MAX_NUM_BLOCKS = dna.getNumBlocks();
 
       if(fitnessTest(dna, previousDNA))
       {
-        if(dna.getMutationSequence() != null && generator.nextInt(dna.getMutationSequenceChance()) == 0)
+        if(MutationPath.isPresent(dna.getMutationPath()) && generator.nextInt(dna.getMutationSequenceChance()) == 0)
         {
           followPathSequence = true;
-          String[] path = dna.getMutationSequence().split(" ");
-          for(String item : path) pathSequence.add(item);
+          followedPath = dna.getMutationPath();
         }
         dna.changeMutationSequenceChance(-2);
 
 
-        if(followPathSequence) blockID = Integer.parseInt(pathSequence.remove());
+        if(followPathSequence) blockID = MutationPath.getBlockID(followedPath);
         else blockID = generator.nextInt(MAX_NUM_BLOCKS);
 
 
@@ -380,27 +439,19 @@ public class HillClimbing
         dna.changeMutationSequenceChance(+2);
         mutatedDNA = new DNA(previousDNA);
         followPathSequence = false;
-        population.get(i).remove(dnaListSize - 1);
+        strand.remove(dnaListSize - 1);
         blockID = generator.nextInt(MAX_NUM_BLOCKS);
       }
 
-      mutationSequence = blockID + " ";
-
-      if(followPathSequence) mutationType = Integer.parseInt(pathSequence.remove());
+      if(followPathSequence) mutationType = MutationPath.getMutationType(followedPath);
       else mutationType = generator.nextInt(2);
 
 
       mutateBlock(dna, mutatedDNA, blockID, mutationType);
 
-      mutatedDNA.setMutationSequence(mutationSequence);
-      population.get(i).add(mutatedDNA);
-
+      mutatedDNA.setMutationPath(mutationPath);
+      strand.add(mutatedDNA);
+      return fitness;
     }
-
-    overallAvgFitness /= totalNumDNA;
-    checkAvgFitnessDeviation();
-    previousOverallAvgFitness = overallAvgFitness;
-
-    return population;
   }
 }
@@ -0,0 +1,40 @@
+package vcreature.mainSimulation;
+
+/**
+ * A GA that runs on threads of its own instead of being driven by the render loop (IslandModel, SteadyStateGA).
+ * MainSim only reads its counters and snapshots to write out the checkpoints, stats and metrics.
+ */
+public interface BackgroundGA {
+
+  /**
+   * Start the worker threads
+   */
+  void start();
+
+  /**
+   * Stop the worker threads and wait for them
+   */
+  void stop();
+
+  /**
+   * @return generations finished so far
+   */
+  int getGenerations();
+
+  /**
+   * @return crossovers done so far
+   */
+  int getEpochs();
+
+  /**
+   * @return creatures simulated so far
+   */
+  long getEvaluations();
+
+  /**
+   * Copy of the population with one strand per creature holding the best DNA it has had. Safe to call from any
+   * thread.
+   * @return the population
+   */
+  Population snapshot();
+}
@@ -0,0 +1,112 @@
+package vcreature.mainSimulation;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import vcreature.creatureUtil.DNA;
+import vcreature.creatureUtil.DNAio;
+import vcreature.phenotype.BrainBackend;
+import vcreature.phenotype.Creature;
+import vcreature.phenotype.OurCreature;
+import vcreature.phenotype.PhysicsConstants;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+/**
+ * Microbenchmark for Creature.updateBrain. Builds every creature in a population file and runs just the brain
+ * (no physics steps) for a number of ticks with each BrainBackend, then prints the cost per tick. It also runs
+ * the population through a deterministic FitnessEvaluator with each backend to check they give the same fitness.
+ *
+ * Usage: BrainBenchmark population_file [ticks]
+ */
+public class BrainBenchmark {
+  private static final float DT = PhysicsConstants.PHYSICS_UPDATE_RATE;
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.out.println("Usage: BrainBenchmark population_file [ticks]");
+      System.exit(1);
+    }
+    File input = new File(args[0]);
+    int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+    Population population = new Population();
+    DNAio.readPopulation(input, population);
+    ArrayList<DNA> dnas = new ArrayList<>();
+    for (Population.Strand strand : population.getStrands()) {
+      dnas.add(strand.peekLast());
+    }
+    System.out.println("Read " + dnas.size() + " creatures from " + input);
+
+    // the first two rounds warm up the JIT, take the numbers from the last one
+    for (int round = 1; round <= 3; round++) {
+      System.out.println("Round " + round);
+      for (BrainBackend backend : BrainBackend.values()) {
+        benchmark(backend, dnas, ticks);
+      }
+    }
+
+    ArrayList<float[]> fitnesses = new ArrayList<>();
+    for (BrainBackend backend : BrainBackend.values()) {
+      Creature.setBrainBackend(backend);
+      FitnessEvaluator evaluator = new FitnessEvaluator(EarlyStopPolicy.NEVER, true);
+      float[] fitness = new float[dnas.size()];
+      for (int i = 0; i < dnas.size(); i++) {
+        fitness[i] = evaluator.evaluate(dnas.get(i));
+      }
+      fitnesses.add(fitness);
+    }
+    int differences = 0;
+    for (float[] fitness : fitnesses) {
+      for (int i = 0; i < fitness.length; i++) {
+        if (Float.compare(fitness[i], fitnesses.get(0)[i]) != 0) differences++;
+      }
+    }
+    System.out.println("Creatures with a different fitness between backends: " + differences);
+  }
+
+  /**
+   * Time the brain updates for every creature with one backend
+   */
+  private static void benchmark(BrainBackend backend, ArrayList<DNA> dnas, int ticks) {
+    Creature.setBrainBackend(backend);
+    PhysicsSpace physicsSpace = new PhysicsSpace(new Vector3f(-10000f, -10000f, -10000f),
+        new Vector3f(10000f, 10000f, 10000f), PhysicsSpace.BroadphaseType.DBVT);
+    Node rootNode = new Node("Benchmark");
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean ?
+        (com.sun.management.ThreadMXBean) threads : null;
+
+    long nanos = 0;
+    long bytes = 0;
+    long total_ticks = 0;
+    for (DNA dna : dnas) {
+      OurCreature creature;
+      try {
+        creature = new OurCreature(physicsSpace, rootNode, dna);
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      rootNode.updateGeometricState();
+      creature.updateBrain(DT); // start of the simulation, this is where the brain gets compiled
+      long start_bytes = allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+      long start = System.nanoTime();
+      float time = DT;
+      for (int i = 0; i < ticks; i++) {
+        time += DT;
+        creature.updateBrain(time);
+      }
+      nanos += System.nanoTime() - start;
+      if (allocations != null) {
+        bytes += allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) - start_bytes;
+      }
+      total_ticks += ticks;
+      creature.remove();
+    }
+    System.out.format("%-15s %10.1f ns/tick %10.1f bytes/tick (%d ticks)\n", backend, (double) nanos / total_ticks,
+        (double) bytes / total_ticks, total_ticks);
+  }
+}
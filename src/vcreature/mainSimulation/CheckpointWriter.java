@@ -0,0 +1,200 @@
+package vcreature.mainSimulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes checkpoint files on a background thread so the simulation never waits on the disk. Each file is written
+ * to a temp file next to it and then renamed over it, so a crash leaves either the old file or the new one and
+ * never half of one.
+ *
+ * Snapshots are queued per file. If a newer snapshot of a file comes in before the old one was written, the old
+ * one is thrown away (the disk only ever needs the latest), and if the queue is full the oldest waiting snapshot
+ * is dropped instead of making the caller wait. Files are fsynced at most once per fsync interval.
+ */
+public class CheckpointWriter {
+  /**
+   * Makes the bytes of a file. Runs on the writer thread, so it must only use things the caller won't change
+   * afterwards.
+   */
+  public interface Snapshot {
+    ByteBuffer encode() throws IOException;
+  }
+
+  private final LinkedHashMap<File, Snapshot> pending = new LinkedHashMap<>();
+  private final int capacity;
+  private final long fsync_interval_nanos;
+  private final Thread thread;
+  private long last_fsync = System.nanoTime();
+  private boolean writing = false;
+  private boolean closed = false;
+
+  // stats
+  private long written = 0;
+  private long coalesced = 0;
+  private long dropped = 0;
+  private long failed = 0;
+
+  /**
+   * Start the writer thread
+   * @param capacity most snapshots (of different files) that can be waiting at once
+   * @param fsync_interval_seconds how often to fsync, 0 to fsync every file, negative to leave it to the OS
+   */
+  public CheckpointWriter(int capacity, float fsync_interval_seconds) {
+    this.capacity = Math.max(1, capacity);
+    this.fsync_interval_nanos = fsync_interval_seconds < 0 ? -1 : (long) (fsync_interval_seconds * 1e9);
+    thread = new Thread(this::run, "checkpoint-writer");
+    thread.setDaemon(true);
+    thread.start();
+    // The GA quits with System.exit, so get the last checkpoints out on the way down
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "checkpoint-flush"));
+  }
+
+  /**
+   * Queue a new snapshot of a file. Never waits.
+   * @param file file to replace
+   * @param snapshot makes the new contents
+   */
+  public synchronized void submit(File file, Snapshot snapshot) {
+    if (closed) {
+      return;
+    }
+    if (pending.remove(file) != null) {
+      coalesced++;
+    } else if (pending.size() >= capacity) {
+      Iterator<Map.Entry<File, Snapshot>> oldest = pending.entrySet().iterator();
+      System.err.println("Checkpoint queue full, dropping snapshot of " + oldest.next().getKey());
+      oldest.remove();
+      dropped++;
+    }
+    pending.put(file, snapshot);
+    notifyAll();
+  }
+
+  /**
+   * Wait until everything submitted so far is on disk (fsynced or not, depending on the interval)
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized void flush() throws InterruptedException {
+    while (!pending.isEmpty() || writing) {
+      if (!thread.isAlive()) {
+        return;
+      }
+      wait();
+    }
+  }
+
+  /**
+   * Write whatever is still waiting and stop the writer thread
+   */
+  public void close() {
+    try {
+      flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+  }
+
+  private void run() {
+    while (true) {
+      File file;
+      Snapshot snapshot;
+      synchronized (this) {
+        while (pending.isEmpty() && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (pending.isEmpty()) {
+          return;
+        }
+        Iterator<Map.Entry<File, Snapshot>> next = pending.entrySet().iterator();
+        Map.Entry<File, Snapshot> entry = next.next();
+        next.remove();
+        file = entry.getKey();
+        snapshot = entry.getValue();
+        writing = true;
+      }
+      boolean ok = write(file, snapshot);
+      synchronized (this) {
+        writing = false;
+        if (ok) {
+          written++;
+        } else {
+          failed++;
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Write a file through a temp file and an atomic rename
+   * @return true if it was written
+   */
+  private boolean write(File file, Snapshot snapshot) {
+    Path target = file.getAbsoluteFile().toPath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      ByteBuffer contents = snapshot.encode();
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        while (contents.hasRemaining()) {
+          channel.write(contents);
+        }
+        long now = System.nanoTime();
+        if (fsync_interval_nanos >= 0 && now - last_fsync >= fsync_interval_nanos) {
+          channel.force(true);
+          last_fsync = now;
+        }
+      }
+      try {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not write checkpoint " + file + ": " + e);
+      return false;
+    }
+  }
+
+  public synchronized long getWritten() {
+    return written;
+  }
+
+  public synchronized long getCoalesced() {
+    return coalesced;
+  }
+
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  public synchronized long getFailed() {
+    return failed;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d written, %d coalesced, %d dropped, %d failed, %d waiting", written, coalesced, dropped,
+        failed, pending.size());
+  }
+}
@@ -0,0 +1,170 @@
+package vcreature.mainSimulation;
+
+import com.jme3.math.Vector3f;
+import vcreature.creatureUtil.CreatureConstants;
+import vcreature.phenotype.Block;
+import vcreature.phenotype.OurCreature;
+import vcreature.phenotype.PhysicsConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides when a creature being evaluated isn't worth simulating for the rest of SIMULATION_TIME. The
+ * FitnessEvaluator asks after every step and if the answer is yes the creature keeps the fitness it has so far.
+ *
+ * Policies are shared between the evaluator threads, so they must not keep any per-creature state.
+ */
+public interface EarlyStopPolicy {
+
+  /**
+   * Never stop early, every creature gets the full SIMULATION_TIME
+   */
+  EarlyStopPolicy NEVER = (creature, elapsedSimulationTime) -> false;
+
+  /**
+   * Check if the creature should stop being simulated
+   * @param creature creature being simulated
+   * @param elapsedSimulationTime how long it has been simulated for
+   * @return true to stop now
+   */
+  boolean shouldStop(OurCreature creature, float elapsedSimulationTime);
+
+  /**
+   * Stop as soon as any of the policies want to stop
+   * @param policies policies to check
+   * @return combined policy
+   */
+  static EarlyStopPolicy anyOf(List<EarlyStopPolicy> policies) {
+    if (policies.isEmpty()) {
+      return NEVER;
+    }
+    if (policies.size() == 1) {
+      return policies.get(0);
+    }
+    EarlyStopPolicy[] all = policies.toArray(new EarlyStopPolicy[policies.size()]);
+    return (creature, elapsedSimulationTime) -> {
+      for (EarlyStopPolicy policy : all) {
+        if (policy.shouldStop(creature, elapsedSimulationTime)) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+
+  static EarlyStopPolicy anyOf(EarlyStopPolicy... policies) {
+    return anyOf(Arrays.asList(policies));
+  }
+
+  /**
+   * Stops once jBullet has put every block to sleep. Bodies only go to sleep when they've stopped moving, and the
+   * only thing that wakes them back up is a neuron firing.
+   */
+  class Asleep implements EarlyStopPolicy {
+    @Override
+    public boolean shouldStop(OurCreature creature, float elapsedSimulationTime) {
+      return creature.isAsleep();
+    }
+  }
+
+  /**
+   * Stops once no neuron has sent an impulse to any joint for a number of seconds (counting from the start if
+   * nothing has fired yet). Neurons gated on TIME can wait a while before their first impulse, so this needs to be
+   * longer than the longest wait you want to keep.
+   */
+  class Idle implements EarlyStopPolicy {
+    private final float idle_seconds;
+
+    /**
+     * @param idle_seconds how long the creature can go without firing a neuron
+     */
+    public Idle(float idle_seconds) {
+      this.idle_seconds = idle_seconds;
+    }
+
+    @Override
+    public boolean shouldStop(OurCreature creature, float elapsedSimulationTime) {
+      return elapsedSimulationTime - creature.getTimeOfLastImpulse() >= idle_seconds;
+    }
+  }
+
+  /**
+   * Stops creatures that probably can't make it past the worst creature that survived the last cull. The best a
+   * creature can still do is guessed as the highest its lowest point could coast to ballistically with the
+   * velocities it has right now. That ignores anything the motors do later, so it only kicks in once the creature
+   * has gone quiet for a bit (no neuron firing), and it's a heuristic rather than a hard bound.
+   *
+   * Whether a creature gets stopped depends on the rest of the population, so its fitness must not be cached.
+   */
+  class FitnessBound implements EarlyStopPolicy {
+    private final float quiet_seconds;
+    private volatile float survivor_fitness = 0;
+
+    /**
+     * @param quiet_seconds how long the creature has to go without firing a neuron before the heuristic is used
+     */
+    public FitnessBound(float quiet_seconds) {
+      this.quiet_seconds = quiet_seconds;
+    }
+
+    /**
+     * Set the fitness that a creature needs to beat. Called once per generation.
+     * @param survivor_fitness fitness of the worst survivor
+     */
+    public void setSurvivorFitness(float survivor_fitness) {
+      this.survivor_fitness = survivor_fitness;
+    }
+
+    public float getSurvivorFitness() {
+      return survivor_fitness;
+    }
+
+    /**
+     * Work out the fitness of the worst creature that would survive the cull in a population
+     * @param population Population that has just been evaluated
+     * @return fitness at the CULL_PERCENT quantile
+     */
+    public static float worstSurvivor(Population population) {
+      ArrayList<Float> fitnesses = new ArrayList<>();
+      for (Population.Strand strand : population.getStrands()) {
+        fitnesses.add(strand.peekLast().getFitness());
+      }
+      if (fitnesses.isEmpty()) {
+        return 0;
+      }
+      fitnesses.sort(null);
+      int index = (int) (fitnesses.size() * CreatureConstants.CULL_PERCENT);
+      return fitnesses.get(Math.min(index, fitnesses.size() - 1));
+    }
+
+    @Override
+    public boolean shouldStop(OurCreature creature, float elapsedSimulationTime) {
+      float survivor = survivor_fitness;
+      if (survivor <= 0 || elapsedSimulationTime - creature.getTimeOfLastImpulse() < quiet_seconds) {
+        return false;
+      }
+      return coastingFitness(creature) < survivor;
+    }
+
+    /**
+     * Heuristic for the best fitness the creature could still get, assuming it just coasts from here
+     * @param creature creature being simulated
+     * @return guess at the best fitness, motors can still beat it
+     */
+    private float coastingFitness(OurCreature creature) {
+      float gravity = Math.abs(PhysicsConstants.GRAVITY.y);
+      Vector3f velocity = new Vector3f();
+      float lowestApex = Float.MAX_VALUE;
+      for (int i = 0; i < creature.getNumberOfBodyBlocks(); i++) {
+        Block block = creature.getBlockByID(i);
+        block.getPhysicsControl().getLinearVelocity(velocity);
+        float vy = velocity.y;
+        float apex = block.getHeight() + (vy > 0 ? vy * vy / (2 * gravity) : 0);
+        lowestApex = Math.min(lowestApex, apex);
+      }
+      return Math.max(creature.getFitness(), lowestApex);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package vcreature.mainSimulation;
+
+/**
+ * Result of simulating one creature: its fitness and whether the early stop policy cut it short. A creature that
+ * was stopped early only gets the fitness it had so far, and whether it gets stopped depends on the policy (and
+ * for FitnessBound on the rest of the population), so those fitnesses can't go in the FitnessCache.
+ */
+public class Evaluation
+{
+  private final float fitness;
+  private final boolean stoppedEarly;
+
+  /**
+   * @param fitness fitness of the creature, 0 if it is invalid
+   * @param stoppedEarly true if the early stop policy gave up on it before SIMULATION_TIME
+   */
+  public Evaluation(float fitness, boolean stoppedEarly)
+  {
+    this.fitness = fitness;
+    this.stoppedEarly = stoppedEarly;
+  }
+
+  public float getFitness()
+  {
+    return fitness;
+  }
+
+  public boolean wasStoppedEarly()
+  {
+    return stoppedEarly;
+  }
+
+  /**
+   * @return true if simulating the creature again would give the same fitness, given a fresh world
+   */
+  public boolean isCacheable()
+  {
+    return !stoppedEarly;
+  }
+}
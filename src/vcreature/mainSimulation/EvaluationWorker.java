@@ -0,0 +1,190 @@
+package vcreature.mainSimulation;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import vcreature.creatureUtil.CreatureConstants;
+import vcreature.creatureUtil.DNA;
+import vcreature.phenotype.BrainBackend;
+import vcreature.phenotype.Creature;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Worker process for RemoteEvaluator. Connects to the coordinator, then simulates whatever creatures it's sent and
+ * sends back their fitness until the coordinator goes away. Each thread has its own FitnessEvaluator. MainSim
+ * --local-workers starts these itself, to use other machines start them there by hand:
+ *
+ *   EvaluationWorker --coordinator host:port [--threads n] [the coordinator's --max-num-blocks, --deterministic,
+ *                    --early-stop-asleep, --early-stop-idle and --brain]
+ *
+ * The simulation flags have to match the coordinator's, they aren't sent over.
+ */
+public class EvaluationWorker {
+  @Parameter(names = {"-h", "--help"}, description = "Shows the help text", help = true)
+  private boolean help;
+
+  @Parameter(names = "--coordinator", description = "host:port of the MainSim running with --coordinator-port")
+  String coordinator = "localhost:7070";
+
+  @Parameter(names = "--threads", description = "Number of creatures to simulate at once")
+  int threads = 1;
+
+  @Parameter(names = "--connect-timeout", description = "Seconds to keep trying to connect to the coordinator")
+  float connect_timeout = 60;
+
+  @Parameter(names = "--max-num-blocks", description = "Maximum number of blocks for a creature, same as the coordinator")
+  int max_num_blocks = -1;
+
+  @Parameter(names = "--deterministic", description = "Fresh physics world for every creature, same as the coordinator")
+  boolean deterministic = false;
+
+  @Parameter(names = "--early-stop-asleep", description = "Same as the coordinator")
+  boolean early_stop_asleep = false;
+
+  @Parameter(names = "--early-stop-idle", description = "Same as the coordinator")
+  float early_stop_idle = 0;
+
+  @Parameter(names = "--brain", description = "How to run the neuron tables, same as the coordinator")
+  BrainBackend brain_backend = BrainBackend.COMPILED;
+
+  private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+  private DataOutputStream out;
+
+  public static void main(String[] args) {
+    EvaluationWorker worker = new EvaluationWorker();
+    JCommander jc = new JCommander(worker, args);
+    if (worker.help) {
+      jc.usage();
+      System.exit(0);
+    }
+    if (worker.max_num_blocks != -1) CreatureConstants.MAX_BLOCKS = worker.max_num_blocks;
+    Creature.setBrainBackend(worker.brain_backend);
+    try {
+      worker.run();
+    } catch (IOException e) {
+      System.err.println("Worker lost the coordinator at " + worker.coordinator + ": " + e);
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+  private void run() throws IOException {
+    Socket socket = connect();
+    socket.setTcpNoDelay(true);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    out.writeInt(RemoteProtocol.MAGIC);
+    out.writeInt(RemoteProtocol.VERSION);
+    out.writeInt(CreatureConstants.MAX_BLOCKS);
+    out.writeInt(Math.max(1, threads));
+    out.flush();
+    System.out.println("Connected to " + coordinator + " with " + Math.max(1, threads) + " threads");
+
+    ArrayList<EarlyStopPolicy> policies = new ArrayList<>();
+    if (early_stop_asleep) {
+      policies.add(new EarlyStopPolicy.Asleep());
+    }
+    if (early_stop_idle > 0) {
+      policies.add(new EarlyStopPolicy.Idle(early_stop_idle));
+    }
+    EarlyStopPolicy policy = EarlyStopPolicy.anyOf(policies);
+    for (int i = 1; i <= Math.max(1, threads); i++) {
+      Thread thread = new Thread(() -> simulate(policy), "worker-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    // The coordinator closing the connection is how a worker gets told to stop
+    try {
+      while (true) {
+        RemoteProtocol.expect(in, RemoteProtocol.JOB);
+        long id = in.readLong();
+        jobs.add(new Job(id, RemoteProtocol.readGenome(in)));
+      }
+    } catch (EOFException e) {
+      System.out.println("Coordinator closed the connection");
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Keep trying to connect for connect_timeout seconds, so the workers can be started before the coordinator
+   */
+  private Socket connect() throws IOException {
+    int colon = coordinator.lastIndexOf(':');
+    String host = colon < 0 ? "localhost" : coordinator.substring(0, colon);
+    int port = Integer.parseInt(colon < 0 ? coordinator : coordinator.substring(colon + 1));
+    long give_up = System.nanoTime() + (long) (connect_timeout * 1e9);
+    while (true) {
+      Socket socket = new Socket();
+      try {
+        socket.connect(new InetSocketAddress(host, port), 5000);
+        return socket;
+      } catch (IOException e) {
+        socket.close();
+        if (System.nanoTime() > give_up) {
+          throw e;
+        }
+      }
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while connecting");
+      }
+    }
+  }
+
+  /**
+   * Body of each simulation thread. Made on the thread itself since jBullet hands out its solver pools per thread.
+   */
+  private void simulate(EarlyStopPolicy policy) {
+    FitnessEvaluator evaluator = new FitnessEvaluator(policy, deterministic);
+    while (true) {
+      Job job;
+      try {
+        job = jobs.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      Evaluation fitness;
+      try {
+        DNA dna = RemoteProtocol.unpack(job.genome);
+        fitness = evaluator.simulate(dna);
+      } catch (RuntimeException e) {
+        // a creature that breaks the physics gets nothing, same as an invalid one
+        System.err.println("Job " + job.id + " failed: " + e);
+        fitness = new Evaluation(0, false);
+        evaluator = new FitnessEvaluator(policy, deterministic);
+      }
+      try {
+        synchronized (out) {
+          RemoteProtocol.writeResult(out, job.id, fitness);
+        }
+      } catch (IOException e) {
+        System.err.println("Could not send result to " + coordinator + ": " + e);
+        System.exit(1);
+      }
+    }
+  }
+
+  private static class Job {
+    final long id;
+    final byte[] genome;
+
+    Job(long id, byte[] genome) {
+      this.id = id;
+      this.genome = genome;
+    }
+  }
+}
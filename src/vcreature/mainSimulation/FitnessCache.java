@@ -0,0 +1,113 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.DNA;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the fitness of genomes that have already been simulated so duplicates don't have to be simulated
+ * again. Hill climbing reverts to the previous DNA a lot and crossover keeps making children we've already seen,
+ * so this saves a full SIMULATION_TIME for every repeat.
+ *
+ * Genomes are keyed on DNA.getContentHash(). Once the cache is full the least recently used entry is thrown out.
+ * All of the methods are synchronized so it can be shared between evaluator threads.
+ *
+ * A cached fitness is used for good, so only cache fitnesses that would come out the same again, i.e. from fresh
+ * world (deterministic) evaluations.
+ */
+public class FitnessCache {
+  private final int capacity;
+  private final LinkedHashMap<String, Float> fitnesses;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * Create a new cache
+   * @param capacity maximum number of genomes to remember
+   */
+  public FitnessCache(int capacity) {
+    this.capacity = capacity;
+    // access order so that the eldest entry is always the least recently used
+    this.fitnesses = new LinkedHashMap<String, Float>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Float> eldest) {
+        if (size() > FitnessCache.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Look up the fitness for a content hash, counts as a hit or a miss
+   * @param key content hash from DNA.getContentHash()
+   * @return fitness or null if the genome hasn't been simulated
+   */
+  public synchronized Float get(String key) {
+    Float fitness = fitnesses.get(key);
+    if (fitness == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return fitness;
+  }
+
+  /**
+   * Look up the fitness for a DNA
+   * @param dna DNA to look up
+   * @return fitness or null if the genome hasn't been simulated
+   */
+  public Float get(DNA dna) {
+    return get(dna.getContentHash());
+  }
+
+  /**
+   * Remember the fitness of a simulated genome
+   * @param key content hash from DNA.getContentHash()
+   * @param fitness fitness it got
+   */
+  public synchronized void put(String key, float fitness) {
+    fitnesses.put(key, fitness);
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized int size() {
+    return fitnesses.size();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the fraction of lookups that were hits
+   * @return hit rate between 0 and 1
+   */
+  public synchronized float getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (float) hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d/%d genomes, %d hits, %d misses (%.1f%%), %d evictions", fitnesses.size(), capacity,
+        hits, misses, getHitRate() * 100, evictions);
+  }
+}
@@ -0,0 +1,312 @@
+package vcreature.mainSimulation;
+
+import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.joints.PhysicsJoint;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import vcreature.creatureUtil.CreatureConstants;
+import vcreature.creatureUtil.DNA;
+import vcreature.phenotype.BlockPool;
+import vcreature.phenotype.OurCreature;
+import vcreature.phenotype.PhysicsConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out the fitness of a DNA without any of the jME application around it. There is no SimpleApplication,
+ * render loop or GUI, just a PhysicsSpace with a floor that gets stepped at PHYSICS_UPDATE_RATE as fast as the
+ * CPU will go.
+ *
+ * An evaluator owns its world, so it is not thread safe. Use one per thread.
+ */
+public class FitnessEvaluator
+{
+  /**
+   * Most creatures evaluateBatch puts in one world. Each one gets its own collision group and jME only has 16, the
+   * first of which is the floor's.
+   */
+  public static final int MAX_BATCH_SIZE = 15;
+
+  private PhysicsSpace physicsSpace;
+  // Never rendered, Creature and Block just need somewhere to put their geometries
+  private final Node rootNode = new Node("Evaluation World");
+  private RigidBodyControl floor_phy;
+  private final EarlyStopPolicy earlyStopPolicy;
+  private final boolean deterministic;
+  // Blocks outlive the world they were made in, removed ones just get added to the next one
+  private final BlockPool blockPool = new BlockPool();
+
+  /**
+   * Create a new evaluator with its own physics world
+   */
+  public FitnessEvaluator()
+  {
+    this(EarlyStopPolicy.NEVER, false);
+  }
+
+  /**
+   * Create a new evaluator with its own physics world that can give up on creatures early
+   * @param earlyStopPolicy decides when a creature isn't worth simulating any longer
+   * @param deterministic if true every creature gets a brand new physics world. jBullet keeps contact and
+   *                      broadphase state around between creatures, so reusing the world means the same DNA
+   *                      can score differently depending on what was simulated before it.
+   */
+  public FitnessEvaluator(EarlyStopPolicy earlyStopPolicy, boolean deterministic)
+  {
+    this.earlyStopPolicy = earlyStopPolicy;
+    this.deterministic = deterministic;
+    makeWorld();
+  }
+
+  /**
+   * Set up a new PhysicsSpace with the same floor as MainSim, minus the texture
+   */
+  private void makeWorld()
+  {
+    physicsSpace = new PhysicsSpace(new Vector3f(-10000f, -10000f, -10000f), new Vector3f(10000f, 10000f, 10000f),
+        PhysicsSpace.BroadphaseType.DBVT);
+    physicsSpace.setGravity(PhysicsConstants.GRAVITY);
+    physicsSpace.setAccuracy(PhysicsConstants.PHYSICS_UPDATE_RATE);
+    physicsSpace.setMaxSubSteps(4);
+
+    floor_phy = new RigidBodyControl(new BoxCollisionShape(new Vector3f(50f, 0.1f, 50f)), 0.0f);
+    floor_phy.setPhysicsLocation(new Vector3f(0, -0.11f, 0));
+    physicsSpace.add(floor_phy);
+    floor_phy.setFriction(PhysicsConstants.GROUND_SLIDING_FRICTION);
+    floor_phy.setRestitution(PhysicsConstants.GROUND_BOUNCINESS);
+    floor_phy.setDamping(PhysicsConstants.GROUND_LINEAR_DAMPINING, PhysicsConstants.GROUND_ANGULAR_DAMPINING);
+  }
+
+  /**
+   * Check if a creature is behaving like a real creature. Invalid creatures either broke while being built or
+   * got too high too fast, which means the physics blew up on them.
+   * @param creature creature being simulated
+   * @param elapsedSimulationTime how long it has been simulated for
+   * @return true if the creature is valid
+   */
+  public static boolean isValid(OurCreature creature, float elapsedSimulationTime)
+  {
+    return creature.isValid() && !(elapsedSimulationTime < CreatureConstants.VALID_SECONDS_CUTOFF &&
+        creature.getFitness() > CreatureConstants.VALID_FITNESS_CUTOFF);
+  }
+
+  /**
+   * Build the creature from its DNA and simulate it for SIMULATION_TIME seconds, or until the early stop policy
+   * gives up on it.
+   * @param dna DNA of the creature, it is only read
+   * @return fitness of the creature, 0 if it is invalid
+   */
+  public float evaluate(DNA dna)
+  {
+    return simulate(dna).getFitness();
+  }
+
+  /**
+   * Same as evaluate(), but also says if the early stop policy cut the creature short
+   * @param dna DNA of the creature, it is only read
+   * @return fitness of the creature (0 if it is invalid) and whether it was stopped early
+   */
+  public Evaluation simulate(DNA dna)
+  {
+    float dt = PhysicsConstants.PHYSICS_UPDATE_RATE;
+    float elapsedSimulationTime = 0.0f;
+    // Blocks that would intersect or have a bad size make an invalid creature anyway, no need to build it
+    if (!dna.hasValidBlockPlacement())
+    {
+      System.err.println("****INVALID CREATURE****");
+      return new Evaluation(0.0f, false);
+    }
+    if (deterministic)
+    {
+      makeWorld();
+    }
+    OurCreature creature = null;
+    try
+    {
+      creature = new OurCreature(physicsSpace, rootNode);
+      creature.setBlockPool(blockPool);
+      dna.initializeCreature(creature);
+      creature.placeOnGround();
+      do
+      {
+        elapsedSimulationTime += dt;
+        creature.updateBrain(elapsedSimulationTime);
+        if (!isValid(creature, elapsedSimulationTime))
+        {
+          System.err.println("****INVALID CREATURE****");
+          return new Evaluation(0.0f, false);
+        }
+        if (earlyStopPolicy.shouldStop(creature, elapsedSimulationTime))
+        {
+          return new Evaluation(creature.getFitness(), true);
+        }
+        // Keep the geometries in sync with the physics, Block.getHeight() reads the world bounds
+        rootNode.updateLogicalState(dt);
+        rootNode.updateGeometricState();
+        physicsSpace.update(dt);
+      } while (elapsedSimulationTime <= CreatureConstants.SIMULATION_TIME);
+      return new Evaluation(creature.getFitness(), false);
+    }
+    catch (IllegalArgumentException e)
+    {
+      System.err.println("****INVALID CREATURE****");
+      return new Evaluation(0.0f, false);
+    }
+    finally
+    {
+      if (creature != null)
+      {
+        creature.remove();
+      }
+      clear();
+    }
+  }
+
+  /**
+   * Work out the fitness of a lot of DNAs, up to MAX_BATCH_SIZE of them at a time in the same world. Every creature
+   * is in its own collision group so they go right through each other and only touch the floor, and they all get
+   * stepped by the same physicsSpace.update. That only saves jBullet's per step overhead, which is small next to
+   * the per body work, and the broadphase has to keep filtering out the creatures' overlapping blocks, so it
+   * comes out about even with evaluating them one at a time.
+   *
+   * Each creature gets the same validity check and early stopping as evaluate(), and is taken out of the world as
+   * soon as it is done. The IslandOrderSolver keeps the creatures from affecting each other through the solver, so
+   * in deterministic mode (a fresh world for each batch) a creature gets the same fitness whatever it shares its
+   * batch with. That isn't always exactly the fitness evaluate() gives it, evaluate() keeps jBullet's own solver
+   * which works through the contacts in a different order, so don't mix the two in one run.
+   * @param dnas DNAs of the creatures, they are only read
+   * @return fitness of each creature, in the same order, 0 for the invalid ones, and whether it was stopped early
+   */
+  public Evaluation[] evaluateBatch(List<DNA> dnas)
+  {
+    Evaluation[] fitness = new Evaluation[dnas.size()];
+    for (int start = 0; start < dnas.size(); start += MAX_BATCH_SIZE)
+    {
+      int end = Math.min(dnas.size(), start + MAX_BATCH_SIZE);
+      evaluateTogether(dnas.subList(start, end), fitness, start);
+    }
+    return fitness;
+  }
+
+  /**
+   * Simulate up to MAX_BATCH_SIZE creatures in the same world
+   * @param dnas DNAs of the creatures
+   * @param fitness where to put the fitnesses
+   * @param offset index in fitness of the first DNA
+   */
+  private void evaluateTogether(List<DNA> dnas, Evaluation[] fitness, int offset)
+  {
+    float dt = PhysicsConstants.PHYSICS_UPDATE_RATE;
+    float elapsedSimulationTime = 0.0f;
+    if (deterministic)
+    {
+      makeWorld();
+    }
+    // Creatures that share the world don't get to change how each other are solved. Only batches need it, so
+    // jBullet's own solver is put back afterwards for evaluate().
+    ConstraintSolver soloSolver = physicsSpace.getDynamicsWorld().getConstraintSolver();
+    physicsSpace.getDynamicsWorld().setConstraintSolver(new IslandOrderSolver());
+    ArrayList<OurCreature> creatures = new ArrayList<>();
+    ArrayList<Integer> indices = new ArrayList<>();
+    try
+    {
+      for (int i = 0; i < dnas.size(); i++)
+      {
+        DNA dna = dnas.get(i);
+        if (!dna.hasValidBlockPlacement())
+        {
+          System.err.println("****INVALID CREATURE****");
+          fitness[offset + i] = new Evaluation(0.0f, false);
+          continue;
+        }
+        OurCreature creature = new OurCreature(physicsSpace, rootNode);
+        creature.setBlockPool(blockPool);
+        creature.setCollisionGroup(PhysicsCollisionObject.COLLISION_GROUP_02 << i);
+        try
+        {
+          dna.initializeCreature(creature);
+          creature.placeOnGround();
+        }
+        catch (IllegalArgumentException e)
+        {
+          System.err.println("****INVALID CREATURE****");
+          fitness[offset + i] = new Evaluation(0.0f, false);
+          creature.remove();
+          continue;
+        }
+        creatures.add(creature);
+        indices.add(offset + i);
+      }
+      while (!creatures.isEmpty())
+      {
+        elapsedSimulationTime += dt;
+        for (int i = creatures.size() - 1; i >= 0; i--)
+        {
+          OurCreature creature = creatures.get(i);
+          creature.updateBrain(elapsedSimulationTime);
+          if (!isValid(creature, elapsedSimulationTime))
+          {
+            System.err.println("****INVALID CREATURE****");
+            fitness[indices.get(i)] = new Evaluation(0.0f, false);
+          }
+          else if (earlyStopPolicy.shouldStop(creature, elapsedSimulationTime))
+          {
+            fitness[indices.get(i)] = new Evaluation(creature.getFitness(), true);
+          }
+          if (fitness[indices.get(i)] != null)
+          {
+            creature.remove();
+            creatures.remove(i);
+            indices.remove(i);
+          }
+        }
+        rootNode.updateLogicalState(dt);
+        rootNode.updateGeometricState();
+        physicsSpace.update(dt);
+        if (elapsedSimulationTime > CreatureConstants.SIMULATION_TIME)
+        {
+          for (int i = 0; i < creatures.size(); i++)
+          {
+            fitness[indices.get(i)] = new Evaluation(creatures.get(i).getFitness(), false);
+          }
+          break;
+        }
+      }
+    }
+    finally
+    {
+      for (OurCreature creature : creatures)
+      {
+        creature.remove();
+      }
+      clear();
+      physicsSpace.getDynamicsWorld().setConstraintSolver(soloSolver);
+    }
+  }
+
+  /**
+   * Take everything but the floor back out of the world. This also cleans up after creatures that threw part of
+   * the way through being built.
+   */
+  private void clear()
+  {
+    for (PhysicsJoint joint : new ArrayList<>(physicsSpace.getJointList()))
+    {
+      physicsSpace.remove(joint);
+    }
+    for (PhysicsRigidBody body : new ArrayList<>(physicsSpace.getRigidBodyList()))
+    {
+      if (body != floor_phy)
+      {
+        physicsSpace.remove(body);
+      }
+    }
+    rootNode.detachAllChildren();
+  }
+}
@@ -0,0 +1,275 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.CreatureConstants;
+import vcreature.creatureUtil.DNA;
+import vcreature.creatureUtil.RandomDNAGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The crossover half of the GA: trimming a population down to the best of
+ * each strand, selection, crossover and culling.  Pulled out of MainSim so the
+ * islands of an IslandModel can each have their own.<br><br>
+ *
+ * Not thread safe, every thread needs its own.
+ */
+public class GeneticOperators
+{
+  private final Random rand;
+  private final boolean uniform_crossover;
+  private final boolean tournament_selection;
+  private final boolean leg_creature;
+  private final boolean random_creature;
+  private final RandomDNAGenerator generator;
+
+  /**
+   * @param rand                  random numbers for selection and picking
+   *                              which kind of creature to make.
+   * @param uniform_crossover     uniform instead of single point crossover.
+   * @param tournament_selection  tournament instead of culling selection.
+   * @param leg_creature          only make leg creatures.
+   * @param random_creature       only make random creatures.
+   */
+  public GeneticOperators(Random rand, boolean uniform_crossover, boolean tournament_selection,
+                          boolean leg_creature, boolean random_creature)
+  {
+    this.rand = rand;
+    this.uniform_crossover = uniform_crossover;
+    this.tournament_selection = tournament_selection;
+    this.leg_creature = leg_creature;
+    this.random_creature = random_creature;
+    this.generator = new RandomDNAGenerator(rand);
+  }
+
+  /**
+   * Make the next population after a round of hill climbing: the best of
+   * each strand, crossed over if crossover is on, bumped up off the floor.
+   * @param population        population that was just hill climbed.
+   * @param population_size   size of the new population.
+   * @param doing_crossover   false to only trim.
+   * @return                  1d list of the new population.
+   */
+  public ArrayList<DNA> breed(Population population, int population_size, boolean doing_crossover)
+  {
+    ArrayList<DNA> tempPop = trimPopulation(population);
+
+    if(doing_crossover)//&& if doing tournamentSelection
+    {
+      tempPop = doCrossovers(tempPop, population_size);
+    }
+    for(DNA dna : tempPop)
+    {
+      dna.bumpUp();
+    }
+    return tempPop;
+  }
+
+  /**
+   * makes and returns the DNA of a randomly generated creature
+   * @return DNA of a randomly generated creature
+   */
+  public DNA makeRandomDNA()
+  {
+    return generator.makeRandomDNA(leg_creature, random_creature);
+  }
+
+  /**
+   * Assuming crossovers are being done, select and run appropriate crossover.
+   * @param tempPop           1d array of population (from best hillclimbing
+   *                          result).
+   * @param population_size   size of the new population.
+   * @return                  1d array of population.
+   */
+  public ArrayList<DNA> doCrossovers(ArrayList<DNA> tempPop, int population_size)
+  {
+    if(tournament_selection)
+    {
+      tempPop = tournamentSelection(tempPop, population_size);
+    }
+    else
+    {
+      tempPop = cullPopulationSelection(tempPop, population_size);
+    }
+    return tempPop;
+  }
+
+  /**
+   * Tournament Selection crossover.  Select two creatures at random from the
+   * population.  perform crossover. put into new list. return list to make
+   * new population from
+   * @param tempPop           1d list of the population
+   * @param population_size   size of the new population.
+   * @return                  new population of crossovered dnas.
+   */
+  private ArrayList<DNA> tournamentSelection(ArrayList<DNA> tempPop, int population_size)
+  {
+    DNA[] children;
+    //new empty list to hold new population
+    ArrayList<DNA> newPop = new ArrayList<>();
+    //while newpop isn't at new population size
+    while(newPop.size() < population_size)
+    {
+      children = tournamentCrossover(tempPop);
+      //add to new population
+      newPop.add(children[0]);
+      newPop.add(children[1]);
+      //do again
+    }
+    return newPop;
+  }
+
+  /**
+   * One round of tournament selection: the fitter of two random creatures
+   * crossed over with the fitter of two more.
+   * @param tempPop       1d list of the population, at least 2 long.
+   * @return              the two children.
+   */
+  public DNA[] tournamentCrossover(List<DNA> tempPop)
+  {
+    int size = tempPop.size();
+    int index1, index2;
+    DNA dna1, dna2;
+    DNA fit1, fit2;
+    //pick two random creatures
+    index1 = rand.nextInt(size);
+    index2 = rand.nextInt(size);
+    while(index1 == index2)//if same creature is picked for #2 choose another
+    {
+      index2 = rand.nextInt(size);
+    }
+    dna1 = tempPop.get(index1);
+    dna2 = tempPop.get(index2);
+    //store the fittest of the two
+    fit1 = dna1.getFitness() > dna2.getFitness() ? dna1 : dna2;
+    index1 = rand.nextInt(size);
+    index2 = rand.nextInt(size);
+    //get two more and compare
+    while(index1 == index2)
+    {
+      index2 = rand.nextInt(size);
+    }
+    dna1 = tempPop.get(index1);
+    dna2 = tempPop.get(index2);
+    //store fittest of two.
+    fit2 = dna1.getFitness() > dna2.getFitness() ? dna1 : dna2;
+    //crossover the two fittest from comparisons
+    return performCrossover(fit1, fit2);
+  }
+
+  /**
+   * Cull population and perform crossover.
+   * @param tempPop           1d list of population.
+   * @param population_size   size of the new population.
+   */
+  private ArrayList<DNA> cullPopulationSelection(ArrayList<DNA> tempPop, int population_size)
+  {
+    //sort by fitness
+    Collections.sort(tempPop);
+    //cull least fit
+    cullLeastFit(tempPop, population_size);
+    int size = tempPop.size();
+    int count = 0;
+    DNA workingDNA;
+    DNA[] children;
+    //if haven't crossed over entire population and population isn't empty
+    while(count < size && !tempPop.isEmpty())
+    {
+      //if there are at least 2 DNAs in population pull the first two and cross
+      //here for safety.
+      if(tempPop.size() >= 2)
+      {
+        workingDNA = tempPop.remove(0);
+        children = performCrossover(workingDNA, tempPop.remove(0));
+        tempPop.add(children[0]);
+        tempPop.add(children[1]);
+        count += 2;
+      }
+    }
+    //System.out.println("CROSSOVER " +  population.size());
+//    population.sort(null);
+    return tempPop;
+  }
+
+  /**
+   * Make and return a list of the best dna from the population.  Gets the best
+   * generation version for each DNA in the population.
+   * @param population    population to trim.
+   * @return              1D ArrayList of the best dna from the population
+   */
+  public static ArrayList<DNA> trimPopulation(Population population)
+  {
+    //System.out.println("called trim");
+    ArrayList<DNA> newPop = new ArrayList<>();
+    //For each creature history
+    for(Population.Strand strand : population.getStrands())
+    {
+      //add the best fit dna to newpop
+      newPop.add(strand.getBest());
+    }
+    //newPop.sort(null); //sort by fitness
+    return newPop;
+  }
+
+  /**
+   * Cull the least fit members of the population and replace with a random
+   * @param population        1d population array.
+   * @param population_size   size to fill the population back up to.
+   */
+  private void cullLeastFit(ArrayList<DNA> population, int population_size)
+  {
+    int numToCull = (int)(population_size * CreatureConstants.CULL_PERCENT);
+    if(numToCull < 1)
+    {
+      numToCull = 1;
+    }
+    //System.out.println("Culling " + numToCull);
+    for(int i = 0; i < numToCull; ++i)
+    {
+      if(!population.isEmpty())
+      {
+        population.remove(0);
+      }
+    }
+    while(population.size() < population_size)
+    {
+      population.add(makeRandomDNA());
+    }
+  }
+
+  /**
+   * Perform appropriate crossover.
+   * @param dna1
+   * @param dna2
+   * @return
+   */
+  private DNA[] performCrossover(DNA dna1, DNA dna2)
+  {
+    //if singleCrossover
+    if(!uniform_crossover)
+    {
+      return dna1.singleCrossover(dna2);
+    }
+    else
+    {
+      return dna1.uniformCrossover(dna2);
+    }
+  }
+
+  /**
+   * Put a 1D arraylist of dna into a population array.
+   * @param newPop        1d array of DNA
+   * @return              the new population.
+   */
+  public static Population listIntoPopulation(ArrayList<DNA> newPop)
+  {
+    Population population = new Population();
+    for(DNA dna : newPop)
+    {
+      population.add(dna);
+    }
+    return population;
+  }
+}
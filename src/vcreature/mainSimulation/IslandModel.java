@@ -0,0 +1,347 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.DNA;
+import vcreature.hillClimbing.HillClimbing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Island model GA. The population is split into islands that each evaluate, hill climb and cross over on their own
+ * thread, so an island never waits on the slowest creature in somebody else's population. There's no barrier
+ * between the islands at all, each one just goes as fast as it can.
+ *
+ * Every migration_interval generations an island sends copies of its best few creatures to the next island around
+ * the ring. They go through a lock free queue and the next island swaps them in for its worst strands when it
+ * starts its next generation. Apart from those queues the islands only share the (synchronized) fitness cache.
+ *
+ * The render thread never touches an island's population, it only reads the snapshot each island publishes at the
+ * end of a generation.
+ */
+public class IslandModel implements BackgroundGA {
+  /**
+   * Fewest creatures an island can have. Crossover needs two different parents, with fewer it would never find them.
+   */
+  public static final int MIN_ISLAND_SIZE = 2;
+
+  private final Island[] islands;
+  private final Thread[] threads;
+  private volatile boolean running = false;
+
+  /**
+   * Connect the islands into a ring
+   * @param islands islands to run, each one sends its migrants to the one after it
+   * @param migration_interval generations between migrations
+   * @param migrants number of creatures sent each migration
+   */
+  public IslandModel(List<Island> islands, int migration_interval, int migrants) {
+    this.islands = islands.toArray(new Island[islands.size()]);
+    this.threads = new Thread[this.islands.length];
+    for (int i = 0; i < this.islands.length; i++) {
+      Island island = this.islands[i];
+      island.model = this;
+      island.next = this.islands[(i + 1) % this.islands.length];
+      island.migration_interval = Math.max(1, migration_interval);
+      island.migrants = Math.max(0, migrants);
+    }
+  }
+
+  /**
+   * Deal the strands of a population out to the islands round robin, keeping the last DNA of each one
+   * @param population population to split
+   * @param count number of islands
+   * @return a population for each island
+   */
+  public static List<Population> split(Population population, int count) {
+    ArrayList<Population> parts = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      parts.add(new Population());
+    }
+    for (int i = 0; i < population.size(); i++) {
+      parts.get(i % count).add(population.get(i).peekLast());
+    }
+    return parts;
+  }
+
+  /**
+   * Start every island on its own thread
+   */
+  @Override
+  public void start() {
+    running = true;
+    for (int i = 0; i < islands.length; i++) {
+      threads[i] = new Thread(islands[i], "Island " + i);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+  }
+
+  /**
+   * Stop the islands after they finish the creature they're on and wait for them
+   */
+  @Override
+  public void stop() {
+    running = false;
+    for (Thread thread : threads) {
+      if (thread == null) continue;
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  public int getIslandCount() {
+    return islands.length;
+  }
+
+  /**
+   * @return generations finished, added up over all the islands
+   */
+  @Override
+  public int getGenerations() {
+    int generations = 0;
+    for (Island island : islands) {
+      generations += island.snapshot.generation;
+    }
+    return generations;
+  }
+
+  /**
+   * @return crossovers done, added up over all the islands
+   */
+  @Override
+  public int getEpochs() {
+    int epochs = 0;
+    for (Island island : islands) {
+      epochs += island.snapshot.epoch;
+    }
+    return epochs;
+  }
+
+  /**
+   * @return creatures evaluated, added up over all the islands
+   */
+  @Override
+  public long getEvaluations() {
+    long evaluations = 0;
+    for (Island island : islands) {
+      evaluations += island.snapshot.evaluations;
+    }
+    return evaluations;
+  }
+
+  /**
+   * Put the latest snapshots of all the islands together into one population, one strand per creature holding a
+   * copy of the best DNA the strand has had. Safe to call from any thread.
+   * @return the whole population as of each island's last finished generation
+   */
+  @Override
+  public Population snapshot() {
+    Population population = new Population();
+    for (Island island : islands) {
+      for (DNA dna : island.snapshot.best) {
+        population.add(dna);
+      }
+    }
+    if (!population.isEmpty()) {
+      population.updateFitnessCache();
+    }
+    return population;
+  }
+
+  /**
+   * One sub population with its own hill climbing, crossover and evaluator. None of it is thread safe, an island
+   * is only ever run by its own thread.
+   */
+  public static class Island implements Runnable {
+    private final int population_size;
+    private final Supplier<GeneticOperators> makeOperators;
+    private final Supplier<FitnessEvaluator> makeEvaluator;
+    private final FitnessCache fitnessCache;
+    private final EarlyStopPolicy.FitnessBound fitnessBound;
+    private final Random rand;
+    private final boolean doing_crossover;
+    private final ConcurrentLinkedQueue<DNA> inbox = new ConcurrentLinkedQueue<>();
+
+    private Population population;
+    private HillClimbing hillClimbing;
+    private GeneticOperators operators;
+    private FitnessEvaluator evaluator;
+    private int generation_count = 0;
+    private int generation_total_count = 0;
+    private int crossover_count = 0;
+    private long evaluations = 0;
+    private volatile Snapshot snapshot = new Snapshot(0, 0, 0, new ArrayList<>());
+
+    // Set when the ring is put together
+    private IslandModel model;
+    private Island next;
+    private int migration_interval;
+    private int migrants;
+
+    /**
+     * Make an island. jBullet hands out its solver pools per thread when a world is made, so the evaluator is only
+     * made once the island's thread starts, and the operators along with it.
+     * @param population starting population, the island keeps it at this size
+     * @param makeOperators makes crossover operators for this island only
+     * @param makeEvaluator makes an evaluator for this island only
+     * @param fitnessCache cache shared with the other islands, or null
+     * @param fitnessBound the below survivors policy the evaluator uses, or null if it doesn't use one
+     * @param rand random numbers for the hill climbing seeds
+     * @param doing_crossover false to only hill climb
+     */
+    public Island(Population population, Supplier<GeneticOperators> makeOperators,
+                  Supplier<FitnessEvaluator> makeEvaluator, FitnessCache fitnessCache,
+                  EarlyStopPolicy.FitnessBound fitnessBound, Random rand, boolean doing_crossover) {
+      this.population = population;
+      this.population_size = population.size();
+      this.makeOperators = makeOperators;
+      this.makeEvaluator = makeEvaluator;
+      this.fitnessCache = fitnessCache;
+      this.fitnessBound = fitnessBound;
+      this.rand = rand;
+      // crossover needs two different parents
+      this.doing_crossover = doing_crossover && population.size() >= 2;
+      this.hillClimbing = new HillClimbing(population, new Random(rand.nextLong()));
+    }
+
+    @Override
+    public void run() {
+      try {
+        operators = makeOperators.get();
+        evaluator = makeEvaluator.get();
+        while (model.running && !population.isEmpty()) {
+          receiveMigrants();
+          evaluate();
+          finishGeneration();
+        }
+      } catch (RuntimeException e) {
+        System.err.println(Thread.currentThread().getName() + " stopped: " + e);
+        e.printStackTrace();
+      }
+    }
+
+    /**
+     * Swap the creatures other islands have sent for the worst strands here. The new strands start out with the
+     * fitness they had on the island they came from, and get evaluated again along with everything else.
+     */
+    private void receiveMigrants() {
+      ArrayList<DNA> arrived = new ArrayList<>();
+      DNA dna;
+      while ((dna = inbox.poll()) != null) {
+        arrived.add(dna);
+      }
+      if (arrived.isEmpty()) return;
+
+      ArrayList<Population.Strand> strands = population.getStrands();
+      ArrayList<Integer> worst = new ArrayList<>();
+      for (int i = 0; i < strands.size(); i++) {
+        worst.add(i);
+      }
+      worst.sort((a, b) -> Float.compare(strands.get(a).getBest().getFitness(), strands.get(b).getBest().getFitness()));
+      List<Integer> replaced = worst.subList(0, Math.min(arrived.size(), worst.size()));
+      // take them out from the back so the other indexes don't move
+      Collections.sort(replaced, Collections.reverseOrder());
+      for (int index : replaced) {
+        population.remove(index);
+      }
+      for (int i = 0; i < replaced.size(); i++) {
+        population.add(arrived.get(i));
+      }
+    }
+
+    private void evaluate() {
+      for (Population.Strand strand : population.getStrands()) {
+        DNA dna = strand.getLast();
+        String key = fitnessCache == null ? null : dna.getContentHash();
+        Float fitness = key == null ? null : fitnessCache.get(key);
+        if (fitness == null) {
+          Evaluation result = evaluator.simulate(dna);
+          fitness = result.getFitness();
+          evaluations++;
+          // the islands each have their own early stop bound, so only full simulations go in the shared cache
+          if (key != null && result.isCacheable()) {
+            fitnessCache.put(key, fitness);
+          }
+        }
+        strand.updateLastFitness(fitness);
+      }
+    }
+
+    /**
+     * Same as MainSim.finishGeneration, minus the output: publish a snapshot of the evaluated population, send
+     * migrants when it's time, then hill climb and cross over.
+     */
+    private void finishGeneration() {
+      population.updateFitnessCache();
+      if (fitnessBound != null) {
+        fitnessBound.setSurvivorFitness(EarlyStopPolicy.FitnessBound.worstSurvivor(population));
+      }
+      generation_total_count++;
+      publish();
+      if (migrants > 0 && next != this && generation_total_count % migration_interval == 0) {
+        sendMigrants();
+      }
+
+      population = hillClimbing.hillClimb();
+      generation_count++;
+
+      if (hillClimbing.isMutationNeeded() || generation_count > 100) {
+        population = GeneticOperators.listIntoPopulation(
+            operators.breed(population, population_size, doing_crossover));
+        hillClimbing = new HillClimbing(population, new Random(rand.nextLong()));
+        generation_count = 0;
+        crossover_count++;
+      }
+    }
+
+    private void sendMigrants() {
+      ArrayList<DNA> best = population.getBestDNAs();
+      best.sort(Collections.reverseOrder());
+      for (int i = 0; i < Math.min(migrants, best.size()); i++) {
+        next.inbox.add(copy(best.get(i)));
+      }
+    }
+
+    private void publish() {
+      ArrayList<DNA> best = new ArrayList<>();
+      for (DNA dna : population.getBestDNAs()) {
+        best.add(copy(dna));
+      }
+      snapshot = new Snapshot(generation_total_count, crossover_count, evaluations, best);
+    }
+
+    /**
+     * DNAs get bumped up and crossed over in place, so anything that leaves the island has to be a copy
+     */
+    private static DNA copy(DNA dna) {
+      DNA copy = new DNA(dna);
+      copy.storeFitness(dna.getFitness());
+      return copy;
+    }
+  }
+
+  /**
+   * What an island looked like at the end of a generation. Never changed once it's published.
+   */
+  private static class Snapshot {
+    final int generation;
+    final int epoch;
+    final long evaluations;
+    final List<DNA> best;
+
+    Snapshot(int generation, int epoch, long evaluations, List<DNA> best) {
+      this.generation = generation;
+      this.epoch = epoch;
+      this.evaluations = evaluations;
+      this.best = Collections.unmodifiableList(best);
+    }
+  }
+}
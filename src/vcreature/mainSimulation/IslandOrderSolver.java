@@ -0,0 +1,98 @@
+package vcreature.mainSimulation;
+
+import com.bulletphysics.collision.broadphase.Dispatcher;
+import com.bulletphysics.collision.dispatch.CollisionObject;
+import com.bulletphysics.collision.narrowphase.PersistentManifold;
+import com.bulletphysics.dynamics.constraintsolver.ContactSolverInfo;
+import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
+import com.bulletphysics.dynamics.constraintsolver.TypedConstraint;
+import com.bulletphysics.linearmath.IDebugDraw;
+import com.bulletphysics.util.ObjectArrayList;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+
+import java.util.Comparator;
+
+/**
+ * Makes how a creature gets simulated not depend on what else is in its world. jBullet solves each island (a
+ * creature and whatever it's touching besides the floor) on its own, but two things leak in from the rest of the
+ * world:
+ *
+ * The bodies, contacts and joints of an island get handed over in whatever order an unstable quicksort of the whole
+ * world left them in. This puts them back in the order the bodies were added to the world.
+ *
+ * The solver shuffles the order it works through them with a single random seed for the whole world. This keeps a
+ * seed for each collision group instead and swaps it in whenever an island from that group gets solved.
+ *
+ * The creatures are chaotic enough that either one on its own is plenty to send a creature somewhere completely
+ * different, so with both fixed a creature in its own collision group scores exactly what it would alone in a
+ * fresh world with this solver. That isn't what it scores with jBullet's own solver, which hands things over in a
+ * different order, so FitnessEvaluator only puts this in the worlds it runs batches in.
+ */
+class IslandOrderSolver extends SequentialImpulseConstraintSolver {
+  private static final Comparator<CollisionObject> BODY_ORDER = (a, b) -> Integer.compare(uid(a), uid(b));
+  private static final Comparator<PersistentManifold> MANIFOLD_ORDER = (a, b) -> {
+    int order = Integer.compare(uid(a.getBody0()), uid(b.getBody0()));
+    return order != 0 ? order : Integer.compare(uid(a.getBody1()), uid(b.getBody1()));
+  };
+  private static final Comparator<TypedConstraint> CONSTRAINT_ORDER = (a, b) -> {
+    int order = Integer.compare(uid(a.getRigidBodyA()), uid(b.getRigidBodyA()));
+    return order != 0 ? order : Integer.compare(uid(a.getRigidBodyB()), uid(b.getRigidBodyB()));
+  };
+
+  // one for each of jME's 16 collision groups
+  private final long[] seeds = new long[16];
+
+  @Override
+  public float solveGroup(ObjectArrayList<CollisionObject> bodies, int numBodies,
+                          ObjectArrayList<PersistentManifold> manifolds, int manifoldOffset, int numManifolds,
+                          ObjectArrayList<TypedConstraint> constraints, int constraintsOffset, int numConstraints,
+                          ContactSolverInfo info, IDebugDraw debugDrawer, Dispatcher dispatcher) {
+    sort(bodies, 0, numBodies, BODY_ORDER);
+    sort(manifolds, manifoldOffset, numManifolds, MANIFOLD_ORDER);
+    sort(constraints, constraintsOffset, numConstraints, CONSTRAINT_ORDER);
+
+    int group = numBodies > 0 ? groupIndex(bodies.getQuick(0)) : 0;
+    setRandSeed(seeds[group]);
+    float result = super.solveGroup(bodies, numBodies, manifolds, manifoldOffset, numManifolds, constraints,
+        constraintsOffset, numConstraints, info, debugDrawer, dispatcher);
+    seeds[group] = getRandSeed();
+    return result;
+  }
+
+  /**
+   * Broadphase proxies are numbered in the order the bodies were added to the world
+   * @param body a CollisionObject
+   * @return its proxy's number
+   */
+  private static int uid(Object body) {
+    return ((CollisionObject) body).getBroadphaseHandle().getUid();
+  }
+
+  /**
+   * @param body body in the island
+   * @return which of the 16 collision groups it's in
+   */
+  private static int groupIndex(CollisionObject body) {
+    Object owner = body.getUserPointer();
+    if (!(owner instanceof PhysicsCollisionObject)) {
+      return 0;
+    }
+    return Integer.numberOfTrailingZeros(((PhysicsCollisionObject) owner).getCollisionGroup()) & 15;
+  }
+
+  /**
+   * Insertion sort part of a list in place. Islands are small and it's stable, so bodies that compare the same
+   * keep the order they came in.
+   */
+  private static <T> void sort(ObjectArrayList<T> list, int offset, int count, Comparator<T> order) {
+    for (int i = offset + 1; i < offset + count; i++) {
+      T item = list.getQuick(i);
+      int j = i - 1;
+      while (j >= offset && order.compare(list.getQuick(j), item) > 0) {
+        list.setQuick(j + 1, list.getQuick(j));
+        j--;
+      }
+      list.setQuick(j + 1, item);
+    }
+  }
+}
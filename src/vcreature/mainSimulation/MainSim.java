@@ -2,6 +2,7 @@
 
  import com.beust.jcommander.JCommander;
  import com.beust.jcommander.converters.FileConverter;
+ import com.jme3.renderer.RenderManager;
  import com.jme3.renderer.Renderer;
  import com.jme3.system.JmeContext;
  import de.lessvoid.nifty.elements.render.TextRenderer;
@@ -9,10 +10,12 @@
  import vcreature.creatureUtil.CreatureConstants;
  import vcreature.hillClimbing.HillClimbing;
  import vcreature.creatureUtil.*;
+ import vcreature.phenotype.BrainBackend;
  import vcreature.phenotype.Creature;
  import vcreature.phenotype.OurCreature;
  import vcreature.phenotype.PhysicsConstants;
  import vcreature.phenotype.Block;
+ import vcreature.phenotype.BlockPool;
 
  import com.jme3.app.SimpleApplication;
  import com.jme3.bullet.BulletAppState;
@@ -35,9 +38,9 @@
  import com.jme3.system.AppSettings;
 
  import java.io.File;
- import java.io.FileWriter;
  import java.io.IOException;
  import java.util.*;
+ import java.util.concurrent.CompletableFuture;
 
 //Added 10/14/2015 justin thomas
  import com.jme3.niftygui.NiftyJmeDisplay;
@@ -87,17 +90,68 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   @Parameter(names = "--tournament-selection", description = "Set the crossover selection to tournament selection instead of culling selection")
   boolean tournament_selection = false;
 
+  @Parameter(names = "--islands", description = "Split the population into this many islands that evolve on their own threads (headless only), 1 for one population")
+  int island_count = 1;
+
+  @Parameter(names = "--migration-interval", description = "Generations between islands sending their best creatures to the next island")
+  int migration_interval = 10;
+
+  @Parameter(names = "--migrants", description = "Number of creatures an island sends each migration")
+  int migrants = 2;
+
+  @Parameter(names = "--steady-state", description = "Hill climb or replace each creature as soon as it has been simulated instead of a generation at a time (headless only)")
+  boolean steady_state = false;
+
+  @Parameter(names = "--coordinator-port", description = "Simulate in EvaluationWorker processes that connect to this port instead of in threads, -1 for off")
+  int coordinator_port = -1;
+
+  @Parameter(names = "--local-workers", description = "Number of EvaluationWorker processes to start on this machine (on any free port if --coordinator-port isn't given)")
+  int local_workers = 0;
+
+  @Parameter(names = "--worker-timeout", description = "Seconds before a creature an evaluation worker hasn't answered for is sent to another worker")
+  float worker_timeout = 60;
+
+  @Parameter(names = "--strand-history", description = "Number of generations each strand remembers besides its best, 0 to remember all of them")
+  int strand_history = 0;
+
+  @Parameter(names = "--fitness-cache-size", description = "Number of genome fitnesses to remember so duplicates aren't simulated again, 0 to turn off. Defaults to 10000 with --deterministic and off without it, since reused worlds give noisy fitnesses")
+  Integer fitness_cache_size = null;
+
+  @Parameter(names = "--early-stop-asleep", description = "Stop simulating a creature once all of its blocks have gone to sleep")
+  boolean early_stop_asleep = false;
+
+  @Parameter(names = "--early-stop-idle", description = "Stop simulating a creature after this many seconds without a neuron firing (should be longer than any TIME neuron waits), 0 to turn off")
+  float early_stop_idle = 0;
+
+  @Parameter(names = "--early-stop-below-survivors", description = "Stop simulating a creature once it can't beat the worst survivor of the last generation")
+  boolean early_stop_below_survivors = false;
+
+  @Parameter(names = "--batch-size", description = "Simulate up to this many creatures together in each thread's physics world, each in its own collision group (at most 15 to a world)")
+  int batch_size = 1;
+
+  @Parameter(names = "--deterministic", description = "Step the physics at a fixed rate in a fresh world for every creature and seed all the random numbers, so a run can be repeated exactly")
+  boolean deterministic = false;
+
+  @Parameter(names = "--seed", description = "Seed for all of the random numbers, defaults to 0 in deterministic mode")
+  Long seed = null;
+
+  @Parameter(names = "--brain", description = "How to run the neuron tables: NEURONS, COMPILED or METHOD_HANDLES")
+  BrainBackend brain_backend = BrainBackend.COMPILED;
+
   @Parameter(names = "--output", description = "File that you would like to output to", converter = FileConverter.class)
   public static File output_file = new File("dna_out.txt");
 
-  @Parameter(names = "--avg-output", description = "Output file for average fitness")
-  public static File avg_out = new File("avg_out.csv");
+  @Parameter(names = "--binary-output", description = "Write the population in the binary format instead of text (--input reads either)")
+  public static boolean binary_output = false;
+
+  @Parameter(names = "--fsync-interval", description = "Most seconds between fsyncs of the checkpoint files, 0 to fsync every write, negative to never fsync")
+  float fsync_interval = 10;
 
-  @Parameter(names = "--best-output", description = "Output file for best fitness")
-  public static File best_out = new File("best_out.csv");
+  @Parameter(names = "--metrics-output", description = "CSV that gets a row of fitness and diversity stats every generation and crossover", converter = FileConverter.class)
+  public static File metrics_out = new File("metrics.csv");
 
-  @Parameter(names = "--diff-output", description = "Output file for best fitness")
-  public static File diff_out = new File("diff_out.csv");
+  @Parameter(names = "--metrics-max-size", description = "Size in MB at which the metrics file is rotated, 0 to never rotate")
+  float metrics_max_size = 16;
 
   @Parameter(names = "--output-best", description = "File that you would like to output the best creature to", converter = FileConverter.class)
   public static File output_best_creature = new File("best_creature.txt");
@@ -105,6 +159,12 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   @Parameter(names = "--input", description = "Input file to start the Genetic Algorithm", converter = FileConverter.class)
   public static File input_file = null;
 
+  @Parameter(names = "--input-top", description = "Only read this many creatures from --input, the ones with the best saved fitness (binary files) or the first ones (text files), 0 to read them all")
+  int input_top = 0;
+
+  @Parameter(names = "--archive", description = "Genome archive (or binary population file) for the viewer, picking a creature to view picks it from here instead of the population", converter = FileConverter.class)
+  public static File archive_file = null;
+
   @Parameter(names = "--leg-creature", description = "Only make leg creatures")
   boolean leg_creature = false;
 
@@ -125,8 +185,11 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   private boolean isCameraRotating = true;
 
   private OurCreature myCreature;
+  // The displayed creatures are removed and rebuilt one after another, so reuse their blocks
+  private final BlockPool blockPool = new BlockPool();
 //  private ArrayList<ArrayList<DNA>> population;
   private HillClimbing hillClimbing;
+  private GeneticOperators geneticOperators;
   private int current_creature_index = 0;
   private int crossover_count = 0;
   private int generation_total_count = 0;
@@ -137,12 +200,32 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   private float start_total_fitness = 0;
   private Random rand =  new Random();
   private float bestFitnessSoFar;
-  private StringBuilder averageFitnesses;
-  private StringBuilder bestFitnesses;
-  private StringBuilder differences;
 
   private Population population;
 
+  // Only used when thread_count > 1 or headless, the whole generation is evaluated in the background and the
+  // creature on screen is just for looking at.
+  private ParallelEvaluator parallelEvaluator;
+  private CompletableFuture<Void> generationEvaluation;
+  private FitnessCache fitnessCache;
+  private EarlyStopPolicy.FitnessBound fitnessBound;
+
+  // Only used with --islands or --steady-state, the GA runs on its own threads and the render thread just writes
+  // out its snapshots
+  private BackgroundGA backgroundGA;
+  private long background_evaluations = 0;
+
+  // Writes the population, best creature and fitness files off the render thread
+  private static final int CHECKPOINT_QUEUE_SIZE = 16;
+  private CheckpointWriter checkpointWriter;
+
+  // Rotated metrics files kept next to the current one
+  private static final int METRICS_FILES_KEPT = 4;
+  private MetricsLog metricsLog;
+
+  // Creatures to pick from when viewing a specific creature, if there is an archive
+  private GenomeArchive archive;
+
   private ArrayList<Float> generation_fitness = new ArrayList<>();
   private DNA best_creature = null;
 
@@ -154,6 +237,12 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   @Override
   public void simpleInitApp()
   {
+    if (deterministic || seed != null)
+    {
+      seedRandoms(seed == null ? 0 : seed);
+    }
+    Creature.setBrainBackend(brain_backend);
+
     /**
      * Set up Physics
      */
@@ -166,6 +255,11 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     physicsSpace.setAccuracy(PhysicsConstants.PHYSICS_UPDATE_RATE);
     physicsSpace.setMaxSubSteps(4);
     speed = 1;
+    if (deterministic)
+    {
+      // The physics gets stepped by hand at a fixed rate in simpleRender instead of by the frame time
+      bulletAppState.setEnabled(false);
+    }
 
 
 
@@ -195,6 +289,8 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
 
 
     Block.initStaticMaterials(assetManager);
+    geneticOperators = new GeneticOperators(rand, uniform_crossover, tournament_selection, leg_creature,
+        random_creature);
 
     setCreatureConstants();
     population = new Population();
@@ -202,7 +298,14 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     if (input_file != null)
     {
       System.out.println("reading from file: " + input_file);
-      DNAio.readPopulation(input_file, population);
+      if (input_top > 0)
+      {
+        DNAio.readPopulation(input_file, population, input_top);
+      }
+      else
+      {
+        DNAio.readPopulation(input_file, population);
+      }
       if(population_count == -1) population_count = population.size();
       setCreatureConstants();
       System.out.println("read in " + population.size() + " creatures");
@@ -215,18 +318,79 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
       //population.add(myCreature.getDNA());
       //myCreature.remove();
 
-      while (population.size() < CreatureConstants.MAX_POPULATION)
+      // Nothing gets built, so the random creatures can be made on all the threads at once
+      for (DNA dna : RandomDNAGenerator.makeRandomDNAs(CreatureConstants.MAX_POPULATION - population.size(),
+          thread_count, rand.nextLong(), leg_creature, random_creature))
       {
-        population.add(makeAndGetRandomDNA());
+        population.add(dna);
       }
     }
 
     System.out.println("Starting with a population of " + population.size());
+    if (archive_file != null)
+    {
+      try
+      {
+        archive = GenomeArchive.open(archive_file);
+        System.out.println("Opened an archive of " + archive.size() + " creatures");
+      }
+      catch (IOException e)
+      {
+        System.err.println("Could not open archive " + archive_file + ": " + e.getMessage());
+      }
+    }
+    checkpointWriter = new CheckpointWriter(CHECKPOINT_QUEUE_SIZE, fsync_interval);
+    try
+    {
+      metricsLog = new MetricsLog(metrics_out, (long) (metrics_max_size * 1024 * 1024), METRICS_FILES_KEPT);
+    }
+    catch (IOException e)
+    {
+      System.err.println("Could not open " + metrics_out + ", not logging metrics: " + e);
+    }
 
     //testOut();
-    hillClimbing = new HillClimbing(population);
+    hillClimbing = new HillClimbing(population, new Random(rand.nextLong()));
 
-    startSimForCreature(current_creature_index);
+    // Headless runs always evaluate off the render loop so they aren't paced by the frame rate, and deterministic
+    // runs need the fixed step fresh worlds that the evaluator gives them
+    if ((island_count > 1 || steady_state) && !headless)
+    {
+      System.out.println("--islands and --steady-state only work with --headless, running generations");
+      island_count = 1;
+      steady_state = false;
+    }
+    if (island_count > 1)
+    {
+      startIslands();
+    }
+    else if (steady_state)
+    {
+      startSteadyState();
+    }
+    else if (thread_count > 1 || headless || deterministic || coordinator_port >= 0 || local_workers > 0)
+    {
+      fitnessCache = makeFitnessCache();
+      if (coordinator_port >= 0 || local_workers > 0)
+      {
+        parallelEvaluator = startRemoteEvaluator();
+      }
+      if (parallelEvaluator == null)
+      {
+        System.out.println("Evaluating with " + thread_count + " threads");
+        if (early_stop_below_survivors)
+        {
+          fitnessBound = new EarlyStopPolicy.FitnessBound(1.0f);
+        }
+        parallelEvaluator = new ParallelEvaluator(thread_count, fitnessCache, makeEarlyStopPolicy(fitnessBound),
+            deterministic, batch_size);
+      }
+      generationEvaluation = parallelEvaluator.evaluateAsync(population);
+    }
+    if ((parallelEvaluator == null && backgroundGA == null) || !headless)
+    {
+      startSimForCreature(current_creature_index);
+    }
 
     initLighting();
     initKeys();
@@ -241,35 +405,186 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     if (debug) {
       showSettings();
     }
-    averageFitnesses = new StringBuilder();
-    bestFitnesses = new StringBuilder();
-    differences = new StringBuilder();
   }
 
   private void startSimForCreature(int creature_index) {
     currently_displayed_creature = creature_index;
     try
     {
-      if (myCreature != null) {
-        myCreature.remove();
+      // When the workers are evaluating, they own the fitness and the bumping so just look at the DNA
+      DNA dna = parallelEvaluator == null ? population.get(creature_index).getLast() :
+          population.get(creature_index).peekLast();
+      showCreature(dna);
+    } catch (IllegalArgumentException e) {
+      e.printStackTrace();
+      System.err.println("****INVALID CREATURE****");
+      if (parallelEvaluator == null)
+      {
+        population.get(creature_index).updateLastFitness(0.0f);
+        creature_index++;
+        startSimForCreature(creature_index);
       }
-      myCreature = new OurCreature(physicsSpace, rootNode, population.get(creature_index).getLast());
-      myCreature.placeOnGround();
-      //System.out.println("Valid " + myCreature.isValid());
-      elapsedSimulationTime = 0.0f;
+      else if (creature_index < population.size() - 1)
+      {
+        startSimForCreature(creature_index + 1);
+      }
+    }
+  }
+
+  /**
+   * Show the creature picked with setViewingCreature. With an archive it comes from there and isn't part of the
+   * population, so nothing about it is ever written back to the population.
+   */
+  private void startSimForViewedCreature() {
+    if (archive == null) {
+      startSimForCreature(viewing_creature);
+      return;
+    }
+    currently_displayed_creature = viewing_creature;
+    try
+    {
+      showCreature(archive.get(viewing_creature));
     } catch (IllegalArgumentException e) {
       e.printStackTrace();
       System.err.println("****INVALID CREATURE****");
-      population.get(creature_index).updateLastFitness(0.0f);
-      creature_index++;
-      startSimForCreature(creature_index);
+      stopViewingArchiveCreature();
     }
   }
 
+  /**
+   * Nothing to move on to after a broken archive creature, so go back to showing the population
+   */
+  private void stopViewingArchiveCreature() {
+    view_specific_creature = false;
+    startSimForCreature(current_creature_index);
+  }
+
+  private void showCreature(DNA dna) {
+    if (myCreature != null) {
+      myCreature.remove();
+      myCreature = null;
+    }
+    myCreature = new OurCreature(physicsSpace, rootNode, dna, blockPool);
+    myCreature.placeOnGround();
+    //System.out.println("Valid " + myCreature.isValid());
+    elapsedSimulationTime = 0.0f;
+  }
+
   private void storeFitnessForCurrentCreature() {
     population.get(current_creature_index).updateLastFitness(myCreature.getFitness());
   }
 
+  /**
+   * Build the early stop policy out of the command line flags
+   * @param fitnessBound below survivors policy to add, or null
+   * @return policy for the evaluators
+   */
+  private EarlyStopPolicy makeEarlyStopPolicy(EarlyStopPolicy.FitnessBound fitnessBound) {
+    ArrayList<EarlyStopPolicy> policies = new ArrayList<>();
+    if (early_stop_asleep) {
+      policies.add(new EarlyStopPolicy.Asleep());
+    }
+    if (early_stop_idle > 0) {
+      policies.add(new EarlyStopPolicy.Idle(early_stop_idle));
+    }
+    if (fitnessBound != null) {
+      policies.add(fitnessBound);
+    }
+    return EarlyStopPolicy.anyOf(policies);
+  }
+
+  /**
+   * Split the population up into islands and start them. Every island gets its own evaluator, hill climbing and
+   * crossover and runs on a thread of its own, so --thread-count isn't used.
+   */
+  private void startIslands() {
+    island_count = Math.max(1, Math.min(island_count, population.size() / IslandModel.MIN_ISLAND_SIZE));
+    System.out.println("Running " + island_count + " islands, " + migrants + " migrants every " + migration_interval +
+        " generations");
+    fitnessCache = makeFitnessCache();
+    ArrayList<IslandModel.Island> islands = new ArrayList<>();
+    for (Population part : IslandModel.split(population, island_count)) {
+      Random islandRand = new Random(rand.nextLong());
+      EarlyStopPolicy.FitnessBound bound = early_stop_below_survivors ? new EarlyStopPolicy.FitnessBound(1.0f) : null;
+      EarlyStopPolicy policy = makeEarlyStopPolicy(bound);
+      islands.add(new IslandModel.Island(part,
+          () -> new GeneticOperators(islandRand, uniform_crossover, tournament_selection, leg_creature, random_creature),
+          () -> new FitnessEvaluator(policy, deterministic), fitnessCache, bound, islandRand, doing_crossover));
+    }
+    backgroundGA = new IslandModel(islands, migration_interval, migrants);
+    backgroundGA.start();
+  }
+
+  /**
+   * Listen for evaluation workers and start --local-workers of them
+   * @return the evaluator, or null if the port couldn't be opened
+   */
+  private RemoteEvaluator startRemoteEvaluator() {
+    if (early_stop_below_survivors) {
+      System.out.println("--early-stop-below-survivors isn't used by evaluation workers");
+    }
+    ArrayList<String> worker_args = new ArrayList<>();
+    worker_args.add("--max-num-blocks");
+    worker_args.add(Integer.toString(CreatureConstants.MAX_BLOCKS));
+    worker_args.add("--brain");
+    worker_args.add(brain_backend.name());
+    if (deterministic) {
+      worker_args.add("--deterministic");
+    }
+    if (early_stop_asleep) {
+      worker_args.add("--early-stop-asleep");
+    }
+    if (early_stop_idle > 0) {
+      worker_args.add("--early-stop-idle");
+      worker_args.add(Float.toString(early_stop_idle));
+    }
+    try {
+      RemoteEvaluator remote = new RemoteEvaluator(Math.max(0, coordinator_port), fitnessCache, worker_timeout);
+      System.out.println("Workers need: " + String.join(" ", worker_args));
+      remote.startLocalWorkers(local_workers, worker_args);
+      return remote;
+    } catch (IOException e) {
+      System.err.println("Could not start the evaluation workers, using threads instead: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Make the fitness cache if there should be one. Outside deterministic mode the evaluators reuse their worlds, so a
+   * fitness is one noisy sample that depends on what got simulated before it, and caching it would keep that one
+   * sample for the rest of the run. So it's off there unless --fitness-cache-size asks for it.
+   * @return cache, or null for none
+   */
+  private FitnessCache makeFitnessCache() {
+    int size = getFitnessCacheSize();
+    return size > 0 ? new FitnessCache(size) : null;
+  }
+
+  private int getFitnessCacheSize() {
+    if (fitness_cache_size != null) {
+      return fitness_cache_size;
+    }
+    return deterministic ? 10000 : 0;
+  }
+
+  /**
+   * Start the steady state GA on --thread-count workers
+   */
+  private void startSteadyState() {
+    System.out.println("Running a steady state GA with " + thread_count + " threads");
+    fitnessCache = makeFitnessCache();
+    if (early_stop_below_survivors) {
+      fitnessBound = new EarlyStopPolicy.FitnessBound(1.0f);
+    }
+    EarlyStopPolicy policy = makeEarlyStopPolicy(fitnessBound);
+    // SteadyStateGA only calls the operators under its lock and the render thread doesn't breed in this mode, so
+    // its workers can share geneticOperators
+    backgroundGA = new SteadyStateGA(population, thread_count, geneticOperators,
+        () -> new FitnessEvaluator(policy, deterministic), fitnessCache, fitnessBound, new Random(rand.nextLong()),
+        doing_crossover);
+    backgroundGA.start();
+  }
+
   private void showSettings() {
     System.out.println("headless: " + headless);
     System.out.println("speed: " + speed);
@@ -277,18 +592,41 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     System.out.println("viewing_thread: " + viewing_thread);
     System.out.println("population_count: " + population_count);
     System.out.println("max number of blocks:" + max_num_blocks);
-    System.out.println("output file: " + output_file);
-    System.out.println("input: " + input_file);
+    System.out.println("output file: " + output_file + (binary_output ? " (binary)" : ""));
+    System.out.println("fsync interval: " + fsync_interval);
+    System.out.println("metrics output: " + metrics_out + " (rotated at " + metrics_max_size + " MB)");
+    System.out.println("archive: " + archive_file);
+    System.out.println("input: " + input_file + (input_top > 0 ? " (top " + input_top + ")" : ""));
     System.out.println("debug: " + debug);
+    System.out.println("strand history: " + strand_history);
+    System.out.println("fitness cache size: " + getFitnessCacheSize());
+    System.out.println("steady state: " + steady_state);
+    System.out.println("coordinator port: " + coordinator_port + ", local workers: " + local_workers +
+        ", worker timeout: " + worker_timeout);
+    System.out.println("islands: " + island_count + ", migrants: " + migrants + " every " + migration_interval + " generations");
+    System.out.println("deterministic: " + deterministic + ", seed: " + seed);
+    System.out.println("brain: " + brain_backend);
     System.out.println("settings: " + settings);
     System.out.println("physics Accuracy: " + physicsSpace.getAccuracy());
   }
 
   
 
+  /**
+   * Seed every random number generator that the GA uses
+   * @param seed seed for the run
+   */
+  private void seedRandoms(long seed) {
+    System.out.println("Seeding random numbers with " + seed);
+    rand = new Random(seed);
+    DNA.setRandomSeed(rand.nextLong());
+    RandCreature.rand = new Random(rand.nextLong());
+  }
+
   private void setCreatureConstants() {
     if (max_num_blocks != -1) CreatureConstants.MAX_BLOCKS = max_num_blocks;
     if (population_count != -1) CreatureConstants.MAX_POPULATION = population_count;
+    CreatureConstants.MAX_STRAND_HISTORY = strand_history;
   }
 
   private void initLighting()
@@ -349,7 +687,10 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     }
     else if (name.equals("Quit"))
     {
-      System.out.format("Creature Fitness (Maximium height of lowest point) = %.3f meters]\n", myCreature.getFitness());
+      if (myCreature != null)
+      {
+        System.out.format("Creature Fitness (Maximium height of lowest point) = %.3f meters]\n", myCreature.getFitness());
+      }
       System.exit(0);
     }
   }
@@ -358,8 +699,7 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   {
     //System.out.println("*******Time passed*********");
     //System.out.println(elapsedSimulationTime);
-    if(!myCreature.isValid() || elapsedSimulationTime < CreatureConstants.VALID_SECONDS_CUTOFF &&
-        myCreature.getFitness() > CreatureConstants.VALID_FITNESS_CUTOFF)
+    if(!FitnessEvaluator.isValid(myCreature, elapsedSimulationTime))
     {
       System.err.println("****INVALID CREATURE****");
       if (debug) {
@@ -378,41 +718,7 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
    */
   private DNA makeAndGetRandomDNA()
   {
-    RandCreature creature;
-    DNA dna;
-    boolean leg;
-
-    //if only creating leg creatures
-    if (leg_creature && !random_creature)
-    {
-      creature = new LegCreature(physicsSpace, rootNode);
-      dna = creature.getDNA();
-      creature.removeAll();
-    }
-    //if only creating random creatures
-    else if (random_creature && !leg_creature)
-    {
-      creature = new RandCreature(physicsSpace, rootNode);
-      dna = creature.getDNA();
-      creature.removeAll();
-    }
-    //else randomly choose to make a random or leg creature
-    else
-    {
-      leg = rand.nextBoolean();
-      if (leg)
-      {
-        creature = new LegCreature(physicsSpace, rootNode);
-        dna = creature.getDNA();
-      }
-      else
-      {
-        creature = new RandCreature(physicsSpace, rootNode);
-        dna = creature.getDNA();
-      }
-      creature.removeAll();
-    }
-    return dna;
+    return geneticOperators.makeRandomDNA();
   }
 
   /* Use the main event loop to trigger repeating actions. */
@@ -421,12 +727,43 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
   {
     if (isRunning)
     {
-      elapsedSimulationTime += deltaSeconds;
+      if (backgroundGA != null)
+      {
+        finishBackgroundGenerations();
+        return;
+      }
+      if (parallelEvaluator != null)
+      {
+        if (generationEvaluation.isDone())
+        {
+          finishGeneration();
+          generationEvaluation = parallelEvaluator.evaluateAsync(population);
+          if (!headless && myCreature == null)
+          {
+            startSimForCreature(current_creature_index);
+          }
+        }
+        if (myCreature == null)
+        {
+          return;
+        }
+      }
+      elapsedSimulationTime += deterministic ? PhysicsConstants.PHYSICS_UPDATE_RATE : deltaSeconds;
       //print("simpleUpdate() elapsedSimulationTime=", (float)elapsedSimulationTime);
       //print("simpleUpdate() joint1.getHingeAngle()=", joint1.getHingeAngle());
       //TODO put Back: myCreature.updateBrain(elapsedSimulationTime);
       myCreature.updateBrain(elapsedSimulationTime);
       if (!validCreature()) {
+        if (view_specific_creature && archive != null)
+        {
+          stopViewingArchiveCreature();
+          return;
+        }
+        if (parallelEvaluator != null)
+        {
+          showNextViewedCreature();
+          return;
+        }
         population.get(current_creature_index).updateLastFitness(0.0f);
         if(current_creature_index < CreatureConstants.MAX_POPULATION - 1)
         {
@@ -458,7 +795,11 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
       if (elapsedSimulationTime > CreatureConstants.SIMULATION_TIME)
       {
         if (view_specific_creature) {
-          startSimForCreature(viewing_creature);
+          startSimForViewedCreature();
+        }
+        else if (parallelEvaluator != null)
+        {
+          showNextViewedCreature();
         }
         else
         {
@@ -472,276 +813,111 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
           }
           else
           {
-            if (bestFitnessSoFar < population.getBest().getFitness())
-            {
-              best_creature = population.getBest();
-              bestFitnessSoFar = population.getBest().getFitness();
-            }
-            DNAio.writeSingleCreature(best_creature);
-            DNAio.writePopulation(population);
-
-            population.updateFitnessCache();
-            if (crossover_count == 0 && generation_count == 0) {
-              start_total_fitness = population.getTotalRecentFitness();
-            }
-            generation_fitness.add(population.getTotalRecentFitness());
-            updateGUICurrentStatsText();
-            if (debug)
-            {
-              // Show all fitnesses
-              System.out.println("All Fitnesses: ");
-              for (int i = 0; i < CreatureConstants.MAX_POPULATION; i++)
-              {
-                System.out.format("%d: %f\n", i, population.get(i).getLast().getFitness());
-              }
-            }
-
+            finishGeneration();
             current_creature_index = 0;
-            if (!view_only)
-            {
-              population = hillClimbing.hillClimb();
-
-              generation_total_count++;
-              generation_count++;
-            }
-
-          //limiting number of hillclimb generations to limit runaway hillclimb
-            //sessions.
-          if(!view_only && (hillClimbing.isMutationNeeded() || generation_count > 100))
-          {
-            averageFitnesses.append(population.getAverageRecentFitness());
-            averageFitnesses.append(',');
-            bestFitnesses.append(population.getBest().getFitness());
-            bestFitnesses.append(',');
-            writeFitnesses();
-
-            ArrayList<DNA> tempPop = trimPopulation();
-
-            if(doing_crossover)//&& if doing tournamentSelection
-            {
-              tempPop = doCrossovers(tempPop);
-            }
-            for(DNA dna : tempPop)
-            {
-              dna.bumpUp();
-            }
-            diversityCheck(tempPop);
-            listIntoPopulation(tempPop);
-            //may want to reset population after GA to free up memory from keeping track of mutation history of DNAs before GA
-            hillClimbing = new HillClimbing(population); //if population isn't reset, then this can be removed
-            generation_count = 0;
-            crossover_count++;
-          }
             startSimForCreature(current_creature_index);
-
           }
         }
       }
     }
   }
 
-  private void diversityCheck(ArrayList<DNA> tempPop)
+  /**
+   * In deterministic mode the BulletAppState is turned off and the physics is stepped here instead, after the
+   * brain update and the scene graph sync, the same order the FitnessEvaluator uses.
+   */
+  @Override
+  public void simpleRender(RenderManager rm)
   {
-    differences.append(DNA.numDifferences(tempPop));
-    differences.append(',');
-    try
-    {
-      FileWriter writer = new FileWriter(diff_out);
-      writer.write(differences.toString());
-      writer.close();
-    }
-    catch(IOException e)
+    if (deterministic && isRunning)
     {
-      System.out.println("Failed writing differences");
+      physicsSpace.update(PhysicsConstants.PHYSICS_UPDATE_RATE);
     }
   }
 
   /**
-   * Assuming crossovers are being done, select and run appropriate crossover.
-   * @param tempPop           1d array of population (from best hillclimbing
-   *                          result).
-   * @return                  1d array of population.
+   * When the generation is being evaluated in the background the creature on screen doesn't count for anything,
+   * so just move on to the next one and wrap around at the end of the population.
    */
-  private ArrayList<DNA> doCrossovers(ArrayList<DNA> tempPop)
+  private void showNextViewedCreature()
   {
-    if(tournament_selection)
+    if (view_specific_creature)
     {
-      tempPop = tournamentSelection(tempPop);
+      startSimForViewedCreature();
     }
     else
     {
-      tempPop = cullPopulationSelection(tempPop);
+      current_creature_index = (current_creature_index + 1) % population.size();
+      startSimForCreature(current_creature_index);
     }
-    return tempPop;
   }
 
   /**
-   * Tournament Selection crossover.  Select two creatures at random from the
-   * population.  perform crossover. put into new list. return list to make
-   * new population from
-   * @param tempPop       1d list of the population
-   * @return              new population of crossovered dnas.
+   * Called once every creature in the population has a fitness. Writes out the results, does the stats, then
+   * hill climbs and (when it's time) does the crossovers for the next generation.
    */
-  private ArrayList<DNA> tournamentSelection(ArrayList<DNA> tempPop)
+  private void finishGeneration()
   {
-    Random rand = new Random();
-    int size = tempPop.size();
-    int index1, index2;
-    DNA dna1, dna2;
-    DNA fit1, fit2;
-    DNA[] children;
-    //new empty list to hold new population
-    ArrayList<DNA> newPop = new ArrayList<>();
-    //while newpop isn't at new population size
-    while(newPop.size() < CreatureConstants.MAX_POPULATION)
+    if (bestFitnessSoFar < population.getBest().getFitness())
     {
-      //pick two random creatures
-      index1 = rand.nextInt(size);
-      index2 = rand.nextInt(size);
-      while(index1 == index2)//if same creature is picked for #2 choose another
-      {
-        index2 = rand.nextInt(size);
-      }
-      dna1 = tempPop.get(index1);
-      dna2 = tempPop.get(index2);
-      //store the fittest of the two
-      fit1 = dna1.getFitness() > dna2.getFitness() ? dna1 : dna2;
-      index1 = rand.nextInt(size);
-      index2 = rand.nextInt(size);
-      //get two more and compare
-      while(index1 == index2)
-      {
-        index2 = rand.nextInt(size);
-      }
-      dna1 = tempPop.get(index1);
-      dna2 = tempPop.get(index2);
-      //store fittest of two.
-      fit2 = dna1.getFitness() > dna2.getFitness() ? dna1 : dna2;
-      //crossover the two fittest from comparisons
-      children = performCrossover(fit1, fit2);
-      //add to new population
-      newPop.add(children[0]);
-      newPop.add(children[1]);
-      //do again
+      best_creature = population.getBest();
+      bestFitnessSoFar = population.getBest().getFitness();
     }
-    return newPop;
-  }
+    DNAio.checkpointSingleCreature(checkpointWriter, best_creature);
+    DNAio.checkpointPopulation(checkpointWriter, population);
 
-  /**
-   * Cull population and perform crossover.
-   * @param tempPop       1d list of population.
-   */
-  private ArrayList<DNA> cullPopulationSelection(ArrayList<DNA> tempPop)
-  {
-    //sort by fitness
-    Collections.sort(tempPop);
-    //cull least fit
-    cullLeastFit(tempPop);
-    int size = tempPop.size();
-    int count = 0;
-    DNA workingDNA;
-    DNA[] children;
-    //if haven't crossed over entire population and population isn't empty
-    while(count < size && !tempPop.isEmpty())
+    population.updateFitnessCache();
+    if (crossover_count == 0 && generation_count == 0) {
+      start_total_fitness = population.getTotalRecentFitness();
+    }
+    generation_fitness.add(population.getTotalRecentFitness());
+    updateGUICurrentStatsText();
+    if (fitnessBound != null)
     {
-      //if there are at least 2 DNAs in population pull the first two and cross
-      //here for safety.
-      if(tempPop.size() >= 2)
-      {
-        workingDNA = tempPop.remove(0);
-        children = performCrossover(workingDNA, tempPop.remove(0));
-        tempPop.add(children[0]);
-        tempPop.add(children[1]);
-        count += 2;
-      }
+      fitnessBound.setSurvivorFitness(EarlyStopPolicy.FitnessBound.worstSurvivor(population));
     }
-    //System.out.println("CROSSOVER " +  population.size());
-//    population.sort(null);
-    return tempPop;
-  }
-
-  /**
-   * Make and return a list of the best dna from the population.  Gets the best
-   * generation version for each DNA in the population.
-   * @return        1D ArrayList of the best dna from the population
-   */
-  private ArrayList<DNA> trimPopulation()
-  {
-    //System.out.println("called trim");
-    ArrayList<DNA> newPop = new ArrayList<>();
-    DNA best;
-    //For each creature history
-    for(Population.Strand strand : population.getStrands())
+    if (debug)
     {
-      best = strand.get(0);
-      //Choose the best fit dna
-      for(DNA dna : strand.getGenerations())
+      // Show all fitnesses
+      System.out.println("All Fitnesses: ");
+      for (int i = 0; i < CreatureConstants.MAX_POPULATION; i++)
       {
-        if(dna.getFitness() >= best.getFitness())
-        {
-          best = dna;
-        }
+        System.out.format("%d: %f\n", i, population.get(i).getLast().getFitness());
       }
-      //add to newpop
-      newPop.add(best);
     }
-    //newPop.sort(null); //sort by fitness
-    return newPop;
-  }
 
-  /**
-   * Cull the least fit members of the population and replace with a random
-   * @param population        1d population array.
-   */
-  private void cullLeastFit(ArrayList<DNA> population)
-  {
-    int numToCull = (int)(CreatureConstants.MAX_POPULATION * CreatureConstants.CULL_PERCENT);
-    if(numToCull < 1)
+    if (!view_only)
     {
-      numToCull = 1;
-    }
-    //System.out.println("Culling " + numToCull);
-    for(int i = 0; i < numToCull; ++i)
-    {
-      if(!population.isEmpty())
+      if (metricsLog != null)
       {
-        population.remove(0);
+        // the render loop simulates every creature itself, the workers skip cache hits
+        int simulated = parallelEvaluator == null ? population.size() : parallelEvaluator.getLastSimulated();
+        metricsLog.logGeneration(generation_total_count, crossover_count, simulated,
+            population.getAverageRecentFitness(), population.getBest().getFitness());
       }
-    }
-    while(population.size() < CreatureConstants.MAX_POPULATION)
-    {
-      population.add(makeAndGetRandomDNA());
-    }
-  }
+      population = hillClimbing.hillClimb();
 
-  /**
-   * Perform appropriate crossover.
-   * @param dna1
-   * @param dna2
-   * @return
-   */
-  private DNA[] performCrossover(DNA dna1, DNA dna2)
-  {
-    //if singleCrossover
-    if(!uniform_crossover)
-    {
-      return dna1.singleCrossover(dna2);
+      generation_total_count++;
+      generation_count++;
     }
-    else
-    {
-      return dna1.uniformCrossover(dna2);
-    }
-  }
-  /**
-   * Put a 1D arraylist of dna into a population array.
-   * @param newPop        1d array of DNA
-   */
-  private void listIntoPopulation(ArrayList<DNA> newPop)
-  {
-    population = new Population();
-    for(DNA dna : newPop)
+
+    //limiting number of hillclimb generations to limit runaway hillclimb
+    //sessions.
+    if(!view_only && (hillClimbing.isMutationNeeded() || generation_count > 100))
     {
-      population.add(dna);
+      float average = population.getAverageRecentFitness();
+      float best = population.getBest().getFitness();
+
+      ArrayList<DNA> tempPop = geneticOperators.breed(population, CreatureConstants.MAX_POPULATION, doing_crossover);
+      population = GeneticOperators.listIntoPopulation(tempPop);
+      //may want to reset population after GA to free up memory from keeping track of mutation history of DNAs before GA
+      hillClimbing = new HillClimbing(population, new Random(rand.nextLong())); //if population isn't reset, then this can be removed
+      generation_count = 0;
+      crossover_count++;
+      if (metricsLog != null)
+      {
+        metricsLog.logEpoch(generation_total_count, crossover_count, average, best, tempPop);
+      }
     }
   }
 
@@ -773,35 +949,56 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     population.sort(null);
   }
 
-  //=============================FITNESS I/O===============================
-
   /**
-   * Write StringBuilders averageFitnesses and bestFitnesses to output strings
+   * finishGeneration for --islands and --steady-state. The GA hill climbs and crosses over on its own threads, so
+   * this just writes out the checkpoints, stats and metrics whenever it has finished another generation.
    */
-  private void writeFitnesses()
+  private void finishBackgroundGenerations()
   {
-    try
+    int generations = backgroundGA.getGenerations();
+    if (generations == generation_total_count)
     {
-      FileWriter writer = new FileWriter(avg_out);
-      writer.write(averageFitnesses.toString());
-      writer.close();
+      return;
     }
-    catch(IOException e)
+    population = backgroundGA.snapshot();
+    if (population.isEmpty())
     {
-      System.out.println("Failed writing average fitness");
+      return;
     }
-    try
+    DNA best = population.getBest();
+    if (best_creature == null || bestFitnessSoFar < best.getFitness())
     {
-      FileWriter writer = new FileWriter(best_out);
-      writer.write(bestFitnesses.toString());
-      writer.close();
+      best_creature = best;
+      bestFitnessSoFar = best.getFitness();
     }
-    catch(IOException e)
+    DNAio.checkpointSingleCreature(checkpointWriter, best_creature);
+    DNAio.checkpointPopulation(checkpointWriter, population);
+
+    if (generation_total_count == 0)
     {
-      System.out.println("Failed writing best fitness");
+      start_total_fitness = population.getTotalRecentFitness();
     }
+    generation_total_count = generations;
+    generation_fitness.add(population.getTotalRecentFitness());
+    updateGUICurrentStatsText();
+
+    int epochs = backgroundGA.getEpochs();
+    long evaluations = backgroundGA.getEvaluations();
+    if (metricsLog != null)
+    {
+      metricsLog.logGeneration(generations, epochs, (int) (evaluations - background_evaluations),
+          population.getAverageRecentFitness(), best.getFitness());
+      if (epochs != crossover_count)
+      {
+        metricsLog.logEpoch(generations, epochs, population.getAverageRecentFitness(), best.getFitness(),
+            population.getBestDNAs());
+      }
+    }
+    background_evaluations = evaluations;
+    crossover_count = epochs;
   }
 
+  //=============================FITNESS I/O===============================
 
   private void updateGUIFitnessParamsText() {
     setTextForElement("crossover_text", "Crossover Count: " + crossover_count);
@@ -827,6 +1024,13 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
       System.out.println("Change from last Generation: " + getChangeInGenerationFitness());
       System.out.println("Total Change from start:" + totalFitnessChangeFromStart());
       System.out.println("BEST FITNESS SO FAR: " + bestFitnessSoFar);
+      if (fitnessCache != null) {
+        System.out.println("Fitness cache: " + fitnessCache);
+      }
+      if (parallelEvaluator instanceof RemoteEvaluator) {
+        System.out.println("Evaluation workers: " + parallelEvaluator);
+      }
+      System.out.println("Checkpoints: " + checkpointWriter);
     } else {
       setTextForElement("total_fitness_text", "Total Fitness: " + population.getTotalRecentFitness());
       setTextForElement("avg_fitness_text", "Avg Fitness: " + population.getAverageRecentFitness());
@@ -990,10 +1194,10 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
 
   public void setViewingCreature(int viewing_creature) {
     System.out.println("Set the viewing creature...");
-    if (viewing_creature != -1 && viewing_creature >= 0 && viewing_creature < CreatureConstants.MAX_POPULATION) {
+    if (viewing_creature != -1 && viewing_creature >= 0 && viewing_creature < getViewableCreatureCount()) {
       this.view_specific_creature = true;
       this.viewing_creature = viewing_creature;
-      startSimForCreature(viewing_creature);
+      startSimForViewedCreature();
     } else {
       this.view_specific_creature = false;
       startSimForCreature(current_creature_index);
@@ -1001,6 +1205,13 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
     System.out.println("viewing creature: " + viewing_creature);
   }
 
+  /**
+   * @return number of creatures setViewingCreature can pick from, the whole archive if there is one
+   */
+  public int getViewableCreatureCount() {
+    return archive != null ? archive.size() : CreatureConstants.MAX_POPULATION;
+  }
+
   public void showPreviousCreature() {
     System.out.println("showing previous creature...");
     if(current_creature_index > 0) current_creature_index--;
@@ -1015,8 +1226,10 @@ public class MainSim extends SimpleApplication implements ActionListener, Screen
 
   public void setSpeed(int speed) {
     this.speed = speed;
-    physicsSpace.setMaxSubSteps(speed * 4);
-    physicsSpace.setAccuracy(1 / (speed * 60f));
+    if (!deterministic) {
+      physicsSpace.setMaxSubSteps(speed * 4);
+      physicsSpace.setAccuracy(1 / (speed * 60f));
+    }
     settings.setFrequency(speed * 60);
     this.setSettings(settings);
     this.restart();
@@ -0,0 +1,194 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.DNA;
+import vcreature.creatureUtil.PackedDNA;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only CSV of how the run is going, one row per generation and one per crossover epoch:
+ *
+ *   timestamp,kind,generation,epoch,avg,best,diversity,evals_per_sec
+ *
+ * timestamp is milliseconds since 1970, kind is "generation" or "epoch" and diversity is only filled in on epoch
+ * rows (it is the number of differences after the crossover). evals_per_sec is the number of creatures evaluated
+ * since the last row of the same kind divided by the wall time since then.
+ *
+ * Each row is just appended, so a write costs the same no matter how long the run has been going. When the file
+ * gets bigger than the max size it is renamed to name.1 (name.1 to name.2 and so on, the oldest is deleted) and a
+ * new file is started with the header.
+ *
+ * Rows are written, flushed and rotated on a background thread, and so is working out the diversity, so logging
+ * never holds up the caller (the jME update thread).
+ */
+public class MetricsLog {
+  public static final String HEADER = "timestamp,kind,generation,epoch,avg,best,diversity,evals_per_sec";
+
+  private final File file;
+  private final long max_bytes;
+  private final int keep;
+  private final ExecutorService writer;
+  // Only touched on the writer thread once the constructor is done
+  private BufferedWriter out;
+  private long bytes;
+
+  private long last_generation_time = System.nanoTime();
+  private long last_epoch_time = last_generation_time;
+  private long epoch_evaluations = 0;
+
+  /**
+   * Open the log, appending to it if it's already there
+   * @param file file to write
+   * @param max_bytes size at which the file is rotated, 0 or less to never rotate
+   * @param keep number of rotated files to keep
+   * @throws IOException if the file can't be opened
+   */
+  public MetricsLog(File file, long max_bytes, int keep) throws IOException {
+    this.file = file;
+    this.max_bytes = max_bytes;
+    this.keep = Math.max(1, keep);
+    open();
+    writer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // The GA quits with System.exit, so get the last rows out on the way down
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "metrics-flush"));
+  }
+
+  private void open() throws IOException {
+    bytes = file.length();
+    out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    if (bytes == 0) {
+      write(HEADER);
+    }
+  }
+
+  /**
+   * Log the end of a generation
+   * @param generation total generations so far
+   * @param epoch crossovers so far
+   * @param evaluations creatures evaluated in this generation
+   * @param avg average fitness of the population
+   * @param best best fitness of the population
+   */
+  public void logGeneration(int generation, int epoch, int evaluations, float avg, float best) {
+    long now = System.nanoTime();
+    double rate = evaluations / Math.max(1e-9, (now - last_generation_time) / 1e9);
+    last_generation_time = now;
+    epoch_evaluations += evaluations;
+    submit(() -> row("generation", generation, epoch, avg, best, "", rate));
+  }
+
+  /**
+   * Log the end of a crossover epoch, after the generation it finished was logged. The DNAs are packed right
+   * away and their differences are counted on the writer thread, so the population can be changed as soon as this
+   * returns.
+   * @param generation total generations so far
+   * @param epoch crossovers so far, counting this one
+   * @param avg average fitness of the population before the crossover
+   * @param best best fitness of the population before the crossover
+   * @param population DNAs of the population after the crossover, for the diversity
+   */
+  public void logEpoch(int generation, int epoch, float avg, float best, List<DNA> population) {
+    long now = System.nanoTime();
+    double rate = epoch_evaluations / Math.max(1e-9, (now - last_epoch_time) / 1e9);
+    last_epoch_time = now;
+    epoch_evaluations = 0;
+    ArrayList<PackedDNA> snapshot = new ArrayList<>(population.size());
+    for (DNA dna : population) {
+      snapshot.add(PackedDNA.fromDNA(dna));
+    }
+    submit(() -> {
+      ArrayList<DNA> dnas = new ArrayList<>(snapshot.size());
+      for (PackedDNA packed : snapshot) {
+        dnas.add(packed.toDNA());
+      }
+      row("epoch", generation, epoch, avg, best, Integer.toString(DNA.numDifferences(dnas)), rate);
+    });
+  }
+
+  private void submit(Runnable task) {
+    try {
+      writer.execute(task);
+    } catch (RejectedExecutionException e) {
+      // closed, the run is on its way out
+    }
+  }
+
+  private void row(String kind, int generation, int epoch, float avg, float best, String diversity, double rate) {
+    String line = System.currentTimeMillis() + "," + kind + "," + generation + "," + epoch + "," + avg + "," +
+        best + "," + diversity + "," + String.format("%.2f", rate);
+    try {
+      if (max_bytes > 0 && bytes + line.length() + 1 > max_bytes && bytes > HEADER.length() + 1) {
+        rotate();
+      }
+      write(line);
+      // Rows only come every few seconds, so flush each one and a crash doesn't lose any
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Could not write to " + file + ": " + e);
+    }
+  }
+
+  private void write(String line) throws IOException {
+    out.write(line);
+    out.newLine();
+    bytes += line.length() + System.lineSeparator().length();
+  }
+
+  private void rotate() throws IOException {
+    out.close();
+    File oldest = rotated(keep);
+    if (oldest.exists() && !oldest.delete()) {
+      System.err.println("Could not delete " + oldest);
+    }
+    for (int i = keep - 1; i >= 1; i--) {
+      File from = rotated(i);
+      if (from.exists()) {
+        Files.move(from.toPath(), rotated(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.move(file.toPath(), rotated(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    open();
+  }
+
+  private File rotated(int i) {
+    return new File(file.getPath() + "." + i);
+  }
+
+  /**
+   * Write whatever rows are still waiting, then close the file
+   */
+  public void close() {
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+        System.err.println("Gave up waiting for " + file + " to be written");
+        return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      System.err.println("Could not close " + file + ": " + e);
+    }
+  }
+}
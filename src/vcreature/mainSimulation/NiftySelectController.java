@@ -5,7 +5,6 @@ import de.lessvoid.nifty.NiftyEventSubscriber;
 import de.lessvoid.nifty.controls.*;
 import de.lessvoid.nifty.screen.Screen;
 import de.lessvoid.nifty.screen.ScreenController;
-import vcreature.creatureUtil.CreatureConstants;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -54,7 +53,7 @@ public class NiftySelectController implements ScreenController
 
     DropDown creature_view_box = screen.findNiftyControl("creatureViewSelectionBox", DropDown.class);
     creature_view_box.addItem("Run GA");
-    for(int i = 0; i <= CreatureConstants.MAX_POPULATION; i++) {
+    for(int i = 0; i < app.getViewableCreatureCount(); i++) {
       creature_view_box.addItem(i);
     }
   }
@@ -0,0 +1,226 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.DNA;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates a whole generation at once by handing every creature in the Population to a pool of worker threads.
+ * Each worker thread owns its own FitnessEvaluator (and so its own PhysicsSpace), so creatures never share a
+ * world and a generation takes roughly (population size / thread count) * SIMULATION_TIME of simulated time
+ * instead of population size * SIMULATION_TIME. RemoteEvaluator hands them to worker processes instead.
+ *
+ * With a batch size over 1 each thread simulates a batch of creatures at a time in its world, each in its own
+ * collision group, see FitnessEvaluator.evaluateBatch. A creature gets the same fitness whatever it's batched
+ * with, but not always exactly the one it gets on its own, so every creature in a run is batched or none are.
+ */
+public class ParallelEvaluator {
+  private final ExecutorService executor;
+  private final ThreadLocal<FitnessEvaluator> evaluators;
+  private final FitnessCache fitnessCache;
+  private final int thread_count;
+  private final int batch_size;
+  // Creatures waiting to be handed out in batches, only touched by the thread calling evaluateAsync
+  private final ArrayList<DNA> batchDNAs = new ArrayList<>();
+  private final ArrayList<CompletableFuture<Evaluation>> batchFitnesses = new ArrayList<>();
+  // Creatures the last evaluateAsync sent off to be simulated, only touched by the thread calling evaluateAsync
+  private int last_simulated = 0;
+
+  /**
+   * Create a new evaluator backed by the given number of worker threads
+   * @param thread_count number of worker threads (and physics worlds)
+   */
+  public ParallelEvaluator(int thread_count) {
+    this(thread_count, null);
+  }
+
+  /**
+   * Create a new evaluator that skips genomes it finds in the fitness cache
+   * @param thread_count number of worker threads (and physics worlds)
+   * @param fitnessCache cache of already simulated genomes, null to always simulate
+   */
+  public ParallelEvaluator(int thread_count, FitnessCache fitnessCache) {
+    this(thread_count, fitnessCache, EarlyStopPolicy.NEVER, false);
+  }
+
+  /**
+   * Create a new evaluator
+   * @param thread_count number of worker threads (and physics worlds)
+   * @param fitnessCache cache of already simulated genomes, null to always simulate
+   * @param earlyStopPolicy decides when a creature isn't worth simulating any longer, shared by all the threads
+   * @param deterministic give every creature a fresh physics world so the same DNA always gets the same fitness
+   */
+  public ParallelEvaluator(int thread_count, FitnessCache fitnessCache, EarlyStopPolicy earlyStopPolicy,
+                           boolean deterministic) {
+    this(thread_count, fitnessCache, earlyStopPolicy, deterministic, 1);
+  }
+
+  /**
+   * Create a new evaluator that simulates several creatures at a time in each world
+   * @param thread_count number of worker threads (and physics worlds)
+   * @param fitnessCache cache of already simulated genomes, null to always simulate
+   * @param earlyStopPolicy decides when a creature isn't worth simulating any longer, shared by all the threads
+   * @param deterministic give every batch a fresh physics world so the same DNA always gets the same fitness
+   * @param batch_size most creatures to simulate together in one world, see FitnessEvaluator.evaluateBatch
+   */
+  public ParallelEvaluator(int thread_count, FitnessCache fitnessCache, EarlyStopPolicy earlyStopPolicy,
+                           boolean deterministic, int batch_size) {
+    AtomicInteger thread_number = new AtomicInteger(1);
+    this.executor = Executors.newFixedThreadPool(Math.max(1, thread_count), runnable -> {
+      Thread thread = new Thread(runnable, "evaluator-" + thread_number.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.fitnessCache = fitnessCache;
+    this.thread_count = Math.max(1, thread_count);
+    this.batch_size = Math.max(1, batch_size);
+    this.evaluators = ThreadLocal.withInitial(() -> new FitnessEvaluator(earlyStopPolicy, deterministic));
+  }
+
+  /**
+   * For evaluators that simulate somewhere else and override simulate(), no threads are started
+   * @param fitnessCache cache of already simulated genomes, null to always simulate
+   */
+  protected ParallelEvaluator(FitnessCache fitnessCache) {
+    this.executor = null;
+    this.evaluators = null;
+    this.fitnessCache = fitnessCache;
+    this.thread_count = 1;
+    this.batch_size = 1;
+  }
+
+  /**
+   * Simulate one creature
+   * @param dna DNA to simulate, must not be changed until the future is done
+   * @return future fitness, and whether the creature was stopped early
+   */
+  protected CompletableFuture<Evaluation> simulate(DNA dna) {
+    if (batch_size == 1) {
+      return CompletableFuture.supplyAsync(() -> evaluators.get().simulate(dna), executor);
+    }
+    CompletableFuture<Evaluation> fitness = new CompletableFuture<>();
+    batchDNAs.add(dna);
+    batchFitnesses.add(fitness);
+    return fitness;
+  }
+
+  /**
+   * Hand the creatures simulate() has been saving up to the worker threads, split evenly between the threads but
+   * no more than batch_size to a world at a time
+   */
+  private void submitBatches() {
+    if (batchDNAs.isEmpty()) {
+      return;
+    }
+    int per_thread = (batchDNAs.size() + thread_count - 1) / thread_count;
+    int size = Math.min(batch_size, per_thread);
+    for (int start = 0; start < batchDNAs.size(); start += size) {
+      int end = Math.min(batchDNAs.size(), start + size);
+      List<DNA> dnas = new ArrayList<>(batchDNAs.subList(start, end));
+      List<CompletableFuture<Evaluation>> fitnesses = new ArrayList<>(batchFitnesses.subList(start, end));
+      executor.execute(() -> {
+        try {
+          Evaluation[] results = evaluators.get().evaluateBatch(dnas);
+          for (int i = 0; i < results.length; i++) {
+            fitnesses.get(i).complete(results[i]);
+          }
+        } catch (RuntimeException e) {
+          System.err.println("Could not evaluate a batch of " + dnas.size() + " creatures: " + e);
+          for (CompletableFuture<Evaluation> fitness : fitnesses) {
+            fitness.completeExceptionally(e);
+          }
+        }
+      });
+    }
+    batchDNAs.clear();
+    batchFitnesses.clear();
+  }
+
+  /**
+   * Start evaluating the last generation of every Strand in the population. The fitness of each creature is
+   * written back through Strand.updateLastFitness from the worker thread that simulated it, so the population
+   * must not be changed until the returned future is done. Creatures the early stop policy cut short aren't
+   * cached, their fitness depends on the policy and not just the genome. A creature that couldn't be simulated
+   * (see RemoteEvaluator) isn't cached either, and its strand keeps the fitness it had.
+   * @param population Population to evaluate
+   * @return future that completes once every creature has a fitness
+   */
+  public CompletableFuture<Void> evaluateAsync(Population population) {
+    ArrayList<CompletableFuture<Void>> jobs = new ArrayList<>();
+    // Identical genomes in the same generation only get simulated once
+    HashMap<String, CompletableFuture<Evaluation>> simulating = new HashMap<>();
+    int simulated = 0;
+    for (Population.Strand strand : population.getStrands()) {
+      // getLast() bumps the DNA up off the floor, so do it here on the calling thread and not in the workers
+      DNA dna = strand.getLast();
+      if (fitnessCache == null) {
+        jobs.add(update(strand, simulate(dna)));
+        simulated++;
+        continue;
+      }
+      String key = dna.getContentHash();
+      CompletableFuture<Evaluation> fitness = simulating.get(key);
+      if (fitness == null) {
+        Float cached = fitnessCache.get(key);
+        if (cached != null) {
+          strand.updateLastFitness(cached);
+          continue;
+        }
+        fitness = simulate(dna).thenApply(result -> {
+          if (result.isCacheable()) {
+            fitnessCache.put(key, result.getFitness());
+          }
+          return result;
+        });
+        simulating.put(key, fitness);
+        simulated++;
+      }
+      jobs.add(update(strand, fitness));
+    }
+    submitBatches();
+    last_simulated = simulated;
+    return CompletableFuture.allOf(jobs.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * @return creatures the last evaluateAsync actually simulated, leaving out cache hits and the copies of genomes
+   * that were already being simulated
+   */
+  public int getLastSimulated() {
+    return last_simulated;
+  }
+
+  /**
+   * Write a fitness back to its strand once it's in. If the simulation failed, the strand is left alone and the
+   * generation carries on without it.
+   */
+  private static CompletableFuture<Void> update(Population.Strand strand, CompletableFuture<Evaluation> fitness) {
+    return fitness.handle((result, error) -> {
+      if (error == null) {
+        strand.updateLastFitness(result.getFitness());
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Evaluate the population and wait for all of the creatures to finish
+   * @param population Population to evaluate
+   */
+  public void evaluate(Population population) {
+    evaluateAsync(population).join();
+  }
+
+  /**
+   * Stop all of the worker threads
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
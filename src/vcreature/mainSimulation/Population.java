@@ -2,9 +2,11 @@ package vcreature.mainSimulation;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import vcreature.creatureUtil.CreatureConstants;
 import vcreature.creatureUtil.DNA;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 /**
@@ -260,11 +262,19 @@ public class Population {
 
   /**
    * The Strand class keeps track of each starting DNA's history through the hill climbing process.
+   * If CreatureConstants.MAX_STRAND_HISTORY is set then only that many of the most recent generations are kept,
+   * along with the best DNA the strand has ever had.
    */
   public class Strand {
     // Array list of all the generations the DNA went through
     private ArrayList<DNA> generations = new ArrayList<>();
 
+    // Best DNA this strand has had, kept even after it drops out of the history
+    private DNA best = null;
+    private float best_fitness = 0;
+    // Best DNA trimHistory has dropped, so a rescan still sees everything the strand has had
+    private DNA best_trimmed = null;
+
     // Cache fields for the total and average fitnesses
     private float total_fitness = 0;
     private float avg_fitness = 0;
@@ -306,6 +316,8 @@ public class Population {
      */
     public void add(DNA dna) {
       generations.add(dna);
+      updateBest(dna);
+      trimHistory();
     }
 
     /**
@@ -323,7 +335,9 @@ public class Population {
      * @param fitness fitness of DNA
      */
     public void updateFitness(int dna_id, float fitness) {
-      generations.get(dna_id).storeFitness(fitness);
+      DNA dna = generations.get(dna_id);
+      dna.storeFitness(fitness);
+      updateBest(dna);
       updateFitnessCache();
     }
 
@@ -332,7 +346,9 @@ public class Population {
      * @param fitness
      */
     public void updateLastFitness(float fitness) {
-      Iterables.getLast(generations).storeFitness(fitness);
+      DNA dna = Iterables.getLast(generations);
+      dna.storeFitness(fitness);
+      updateBest(dna);
       updateFitnessCache();
     }
 
@@ -348,18 +364,54 @@ public class Population {
     }
 
     /**
-     * Get the best DNA out of all the generations for this Strand.
+     * Get the best DNA out of all the generations for this Strand. Ties go to the most recent one.
      * @return best DNA
      */
     public DNA getBest() {
-      DNA best;
-      best = Iterables.getLast(generations);
+      return best;
+    }
+
+    /**
+     * Check if a DNA that was just added or given a fitness is the new best
+     * @param dna DNA to check
+     */
+    private void updateBest(DNA dna) {
+      if (dna == best && dna.getFitness() < best_fitness) {
+        // the best got a worse fitness, so have to look through what's left
+        rescanBest();
+      } else if (best == null || dna.getFitness() >= best.getFitness()) {
+        best = dna;
+      }
+      best_fitness = best.getFitness();
+    }
+
+    private void rescanBest() {
+      // the trimmed ones are all older, so the history wins ties
+      best = best_trimmed;
       for(DNA dna : generations) {
-        if (dna.getFitness() >= best.getFitness()) {
+        if (best == null || dna.getFitness() >= best.getFitness()) {
           best = dna;
         }
       }
-      return best;
+      best_fitness = best == null ? 0 : best.getFitness();
+    }
+
+    /**
+     * Drop the oldest generations once there are more than MAX_STRAND_HISTORY of them. Always keeps at least
+     * two since hill climbing compares against the previous generation. The best of the dropped ones is kept
+     * aside, so getBest() is the same as if nothing was ever dropped.
+     */
+    private void trimHistory() {
+      int limit = CreatureConstants.MAX_STRAND_HISTORY;
+      if (limit <= 0 || generations.size() <= Math.max(limit, 2)) return;
+      List<DNA> dropped = generations.subList(0, generations.size() - Math.max(limit, 2));
+      for(DNA dna : dropped) {
+        if (best_trimmed == null || dna.getFitness() >= best_trimmed.getFitness()) {
+          best_trimmed = dna;
+        }
+      }
+      dropped.clear();
+      updateFitnessCache();
     }
 
     /**
@@ -371,6 +423,14 @@ public class Population {
       return Iterables.getLast(generations);
     }
 
+    /**
+     * Get the last generation DNA without bumping it up, used when something else might be simulating it.
+     * @return last DNA
+     */
+    public DNA peekLast() {
+      return Iterables.getLast(generations);
+    }
+
     /**
      * Get the number of generations there are currently
      * @return int Number of generations
@@ -384,7 +444,8 @@ public class Population {
      * @param index Generation index
      */
     public void remove(int index) {
-      generations.remove(index);
+      DNA removed = generations.remove(index);
+      if (removed == best) rescanBest();
     }
 
     /**
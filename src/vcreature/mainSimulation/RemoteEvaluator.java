@@ -0,0 +1,444 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.CreatureConstants;
+import vcreature.creatureUtil.DNA;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParallelEvaluator that simulates in EvaluationWorker processes instead of threads, so each jBullet world and
+ * heap is in a JVM of its own and more machines can be added later. Workers connect over TCP (see RemoteProtocol)
+ * and can come and go at any time.
+ *
+ * Creatures wait in one queue and a worker is only ever sent as many as it has slots, so the next one always goes
+ * to whichever worker frees up first and a fast worker ends up doing more of the generation than a slow one. A
+ * creature that takes longer than the timeout is queued again for a worker that hasn't had it yet (whichever answer
+ * comes back first wins), and everything a worker had is queued again when its connection drops. A creature is
+ * given up on once it has been sent out MAX_ATTEMPTS times without an answer or every connected worker has had it,
+ * so one that keeps killing workers can't stall the run, and queued creatures are given up on when no worker has
+ * been connected for MAX_ATTEMPTS timeouts. Its future fails, so it isn't cached and its strand keeps the fitness it
+ * had.
+ */
+public class RemoteEvaluator extends ParallelEvaluator {
+  private static final int MAX_ATTEMPTS = 3;
+
+  private final ServerSocket server;
+  private final long timeout_nanos;
+  private final ScheduledExecutorService timer;
+  private final ArrayDeque<Job> queue = new ArrayDeque<>();
+  private final ArrayList<Worker> workers = new ArrayList<>();
+  private final ArrayList<Process> local_workers = new ArrayList<>();
+  private volatile boolean running = true;
+  private boolean stop_hook_added = false;
+
+  private long next_id = 0;
+  private long sent = 0;
+  private long timed_out = 0;
+  private long workers_lost = 0;
+  private long given_up = 0;
+  // when the last worker went away (nanoTime), only meaningful while there are none
+  private long no_workers_since = System.nanoTime();
+
+  /**
+   * Start listening for workers
+   * @param port port to listen on, 0 for any free one
+   * @param fitnessCache cache of already simulated genomes, null to always simulate
+   * @param timeout_seconds seconds before a creature is sent to another worker as well
+   * @throws IOException if the port can't be opened
+   */
+  public RemoteEvaluator(int port, FitnessCache fitnessCache, float timeout_seconds) throws IOException {
+    super(fitnessCache);
+    this.server = new ServerSocket(port);
+    this.timeout_nanos = (long) (timeout_seconds * 1e9);
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "remote-timeouts");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleWithFixedDelay(this::checkTimeouts, 1, 1, TimeUnit.SECONDS);
+    Thread acceptor = new Thread(this::accept, "remote-accept");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    System.out.println("Waiting for evaluation workers on port " + getPort());
+  }
+
+  /**
+   * @return port the workers connect to
+   */
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Start worker processes on this machine with the same java and classpath as this one. They're killed when this
+   * evaluator is shut down or the JVM exits.
+   * @param count number of processes
+   * @param worker_args extra arguments for each EvaluationWorker, the simulation flags
+   * @throws IOException if a process can't be started
+   */
+  public void startLocalWorkers(int count, List<String> worker_args) throws IOException {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    for (int i = 0; i < count; i++) {
+      ArrayList<String> command = new ArrayList<>();
+      command.add(java);
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(EvaluationWorker.class.getName());
+      command.add("--coordinator");
+      command.add("localhost:" + getPort());
+      command.addAll(worker_args);
+      Process process = new ProcessBuilder(command).inheritIO().start();
+      synchronized (local_workers) {
+        local_workers.add(process);
+      }
+    }
+    if (count > 0 && !stop_hook_added) {
+      Runtime.getRuntime().addShutdownHook(new Thread(this::stopLocalWorkers));
+      stop_hook_added = true;
+    }
+  }
+
+  private void stopLocalWorkers() {
+    synchronized (local_workers) {
+      for (Process process : local_workers) {
+        process.destroy();
+      }
+      local_workers.clear();
+    }
+  }
+
+  @Override
+  protected CompletableFuture<Evaluation> simulate(DNA dna) {
+    Job job = new Job(RemoteProtocol.pack(dna));
+    synchronized (this) {
+      job.id = next_id++;
+      queue.add(job);
+    }
+    dispatch();
+    return job.result;
+  }
+
+  private void accept() {
+    while (running) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        Worker worker = new Worker(socket);
+        synchronized (this) {
+          workers.add(worker);
+        }
+        System.out.println("Evaluation worker connected from " + socket.getRemoteSocketAddress() + " with " +
+            worker.slots + " slots");
+        Thread reader = new Thread(() -> read(worker), "remote-" + socket.getRemoteSocketAddress());
+        reader.setDaemon(true);
+        reader.start();
+        dispatch();
+      } catch (IOException e) {
+        if (running) {
+          System.err.println("Evaluation worker could not connect: " + e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads results from one worker until its connection drops
+   */
+  private void read(Worker worker) {
+    try {
+      while (true) {
+        RemoteProtocol.expect(worker.in, RemoteProtocol.RESULT);
+        long id = worker.in.readLong();
+        Evaluation fitness = RemoteProtocol.readResult(worker.in);
+        Job job;
+        synchronized (this) {
+          job = worker.remove(id);
+        }
+        if (job != null) {
+          // a creature that timed out could finish on two workers, the first answer is the one kept
+          job.result.complete(fitness);
+        }
+        dispatch();
+      }
+    } catch (IOException e) {
+      lost(worker, e);
+    }
+  }
+
+  /**
+   * Send queued creatures to workers with free slots, emptiest worker first. A creature is never sent to a worker
+   * that already had it, it waits in the queue until another worker is free.
+   */
+  private void dispatch() {
+    ArrayList<Worker> to = new ArrayList<>();
+    ArrayList<Job> jobs = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Job> queued = queue.iterator();
+      while (queued.hasNext() && hasFreeSlot()) {
+        Job job = queued.next();
+        if (job.result.isDone()) {
+          queued.remove();
+          continue;
+        }
+        Worker idlest = null;
+        for (Worker worker : workers) {
+          if (worker.free() > 0 && !job.tried.contains(worker) && (idlest == null || worker.free() > idlest.free())) {
+            idlest = worker;
+          }
+        }
+        if (idlest == null) {
+          continue;
+        }
+        queued.remove();
+        job.attempts++;
+        job.tried.add(idlest);
+        idlest.in_flight.put(job, System.nanoTime());
+        sent++;
+        to.add(idlest);
+        jobs.add(job);
+      }
+    }
+    for (int i = 0; i < jobs.size(); i++) {
+      Worker worker = to.get(i);
+      try {
+        synchronized (worker.out) {
+          RemoteProtocol.writeJob(worker.out, jobs.get(i).id, jobs.get(i).genome);
+        }
+      } catch (IOException e) {
+        lost(worker, e);
+      }
+    }
+  }
+
+  /**
+   * Called holding the lock
+   */
+  private boolean hasFreeSlot() {
+    for (Worker worker : workers) {
+      if (worker.free() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Queue everything a dead worker had again
+   */
+  private void lost(Worker worker, IOException e) {
+    synchronized (this) {
+      if (!workers.remove(worker)) {
+        return;
+      }
+      workers_lost++;
+      if (workers.isEmpty()) {
+        no_workers_since = System.nanoTime();
+      }
+      for (Job job : worker.in_flight.keySet()) {
+        retry(job);
+      }
+      worker.in_flight.clear();
+    }
+    if (running) {
+      System.err.println("Lost evaluation worker " + worker.socket.getRemoteSocketAddress() + ": " + e);
+    }
+    try {
+      worker.socket.close();
+    } catch (IOException ignored) {
+    }
+    dispatch();
+  }
+
+  /**
+   * Send creatures that have been out longer than the timeout to another worker. The slow worker keeps its copy
+   * and its slot until it answers or dies. Also gives up on queued creatures that no worker is left to take.
+   */
+  private void checkTimeouts() {
+    long now = System.nanoTime();
+    boolean retried = false;
+    synchronized (this) {
+      for (Worker worker : workers) {
+        for (Map.Entry<Job, Long> sent_at : worker.in_flight.entrySet()) {
+          if (now - sent_at.getValue() > timeout_nanos) {
+            // far in the future, so it doesn't time out again on this worker
+            sent_at.setValue(Long.MAX_VALUE / 2 + now);
+            timed_out++;
+            retry(sent_at.getKey());
+            retried = true;
+          }
+        }
+      }
+      boolean no_workers = workers.isEmpty() && now - no_workers_since > MAX_ATTEMPTS * timeout_nanos;
+      Iterator<Job> queued = queue.iterator();
+      while (queued.hasNext()) {
+        Job job = queued.next();
+        if (job.result.isDone()) {
+          queued.remove();
+        } else if (no_workers) {
+          queued.remove();
+          giveUp(job, "Creature " + job.id + " waited for a worker for " + MAX_ATTEMPTS * timeout_nanos / 1000000000L +
+              " seconds");
+        } else if (triedAll(job)) {
+          queued.remove();
+          giveUp(job, "Creature " + job.id + " was sent to every worker without an answer");
+        }
+      }
+    }
+    if (retried) {
+      dispatch();
+    }
+  }
+
+  /**
+   * Put a creature back at the front of the queue, or give up on it. Called holding the lock.
+   */
+  private void retry(Job job) {
+    if (job.result.isDone() || queue.contains(job)) {
+      return;
+    }
+    if (job.attempts >= MAX_ATTEMPTS) {
+      giveUp(job, "Creature " + job.id + " was sent out " + job.attempts + " times without an answer");
+    } else if (triedAll(job)) {
+      giveUp(job, "Creature " + job.id + " was sent to every worker without an answer");
+    } else {
+      queue.addFirst(job);
+    }
+  }
+
+  /**
+   * True if there are workers and every one of them has had the creature, so it would never leave the queue.
+   * Called holding the lock.
+   */
+  private boolean triedAll(Job job) {
+    return !workers.isEmpty() && job.tried.containsAll(workers);
+  }
+
+  /**
+   * Fail a creature's future. Called holding the lock.
+   */
+  private void giveUp(Job job, String message) {
+    given_up++;
+    System.err.println(message + ", giving up on it");
+    job.result.completeExceptionally(new IOException(message));
+  }
+
+  /**
+   * Disconnect the workers (which makes them exit) and stop listening
+   */
+  @Override
+  public void shutdown() {
+    running = false;
+    timer.shutdownNow();
+    try {
+      server.close();
+    } catch (IOException ignored) {
+    }
+    ArrayList<Worker> connected;
+    synchronized (this) {
+      connected = new ArrayList<>(workers);
+    }
+    for (Worker worker : connected) {
+      try {
+        worker.socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+    stopLocalWorkers();
+  }
+
+  @Override
+  public synchronized String toString() {
+    int slots = 0;
+    for (Worker worker : workers) {
+      slots += worker.slots;
+    }
+    return String.format("%d workers (%d slots), %d queued, %d sent, %d timed out, %d workers lost, %d given up",
+        workers.size(), slots, queue.size(), sent, timed_out, workers_lost, given_up);
+  }
+
+  private static class Job {
+    final byte[] genome;
+    final CompletableFuture<Evaluation> result = new CompletableFuture<>();
+    long id;
+    int attempts = 0;
+    // workers it has been sent to, only touched holding the evaluator's lock
+    final HashSet<Worker> tried = new HashSet<>();
+
+    Job(byte[] genome) {
+      this.genome = genome;
+    }
+  }
+
+  /**
+   * One connected worker process
+   */
+  private static class Worker {
+    final Socket socket;
+    final DataInputStream in;
+    final DataOutputStream out;
+    final int slots;
+    // creatures sent to this worker and when (nanoTime) they were sent, only touched holding the evaluator's lock
+    final LinkedHashMap<Job, Long> in_flight = new LinkedHashMap<>();
+
+    Worker(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      try {
+        socket.setSoTimeout(10000);
+        int magic = in.readInt();
+        int version = in.readInt();
+        int max_blocks = in.readInt();
+        slots = in.readInt();
+        socket.setSoTimeout(0);
+        if (magic != RemoteProtocol.MAGIC || version != RemoteProtocol.VERSION) {
+          throw new IOException("not an evaluation worker (or the wrong version)");
+        }
+        if (max_blocks != CreatureConstants.MAX_BLOCKS) {
+          throw new IOException("worker has --max-num-blocks " + max_blocks + ", needs " +
+              CreatureConstants.MAX_BLOCKS);
+        }
+        if (slots < 1) {
+          throw new IOException("worker has " + slots + " slots");
+        }
+      } catch (IOException e) {
+        socket.close();
+        throw e;
+      }
+    }
+
+    int free() {
+      return slots - in_flight.size();
+    }
+
+    Job remove(long id) {
+      Iterator<Job> jobs = in_flight.keySet().iterator();
+      while (jobs.hasNext()) {
+        Job job = jobs.next();
+        if (job.id == id) {
+          jobs.remove();
+          return job;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.DNA;
+import vcreature.creatureUtil.PackedDNA;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * What RemoteEvaluator and EvaluationWorker say to each other over TCP. Everything is big endian
+ * (DataOutputStream):
+ *
+ *   worker hello:  int MAGIC, int VERSION, int max blocks, int slots (creatures it can simulate at once)
+ *   job:           byte JOB, long job id, int length, genome (PackedDNA.getBuffer() bytes)
+ *   result:        byte RESULT, long job id, float fitness, boolean stopped early (not cached if true)
+ *
+ * The coordinator never sends a worker more jobs than it has slots, and a worker sends a result for every job.
+ */
+final class RemoteProtocol {
+  static final int MAGIC = 0x56435750; //"VCWP"
+  static final int VERSION = 2;
+  static final byte JOB = 1;
+  static final byte RESULT = 2;
+  // Way bigger than any real genome, just stops a broken stream from allocating gigabytes
+  static final int MAX_GENOME_BYTES = 16 * 1024 * 1024;
+
+  private RemoteProtocol() {
+  }
+
+  static byte[] pack(DNA dna) {
+    ByteBuffer buffer = PackedDNA.fromDNA(dna).getBuffer();
+    byte[] genome = new byte[buffer.remaining()];
+    buffer.get(genome);
+    return genome;
+  }
+
+  static DNA unpack(byte[] genome) {
+    return PackedDNA.wrap(ByteBuffer.wrap(genome)).toDNA();
+  }
+
+  static void writeJob(DataOutputStream out, long id, byte[] genome) throws IOException {
+    out.writeByte(JOB);
+    out.writeLong(id);
+    out.writeInt(genome.length);
+    out.write(genome);
+    out.flush();
+  }
+
+  static void writeResult(DataOutputStream out, long id, Evaluation fitness) throws IOException {
+    out.writeByte(RESULT);
+    out.writeLong(id);
+    out.writeFloat(fitness.getFitness());
+    out.writeBoolean(fitness.wasStoppedEarly());
+    out.flush();
+  }
+
+  /**
+   * Read the rest of a result after its job id
+   */
+  static Evaluation readResult(DataInputStream in) throws IOException {
+    float fitness = in.readFloat();
+    return new Evaluation(fitness, in.readBoolean());
+  }
+
+  /**
+   * Read the type byte of the next message and check that it's the one expected
+   */
+  static void expect(DataInputStream in, byte type) throws IOException {
+    byte got = in.readByte();
+    if (got != type) {
+      throw new IOException("Expected message " + type + " but got " + got);
+    }
+  }
+
+  static byte[] readGenome(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_GENOME_BYTES) {
+      throw new IOException("Genome of " + length + " bytes");
+    }
+    byte[] genome = new byte[length];
+    in.readFully(genome);
+    return genome;
+  }
+}
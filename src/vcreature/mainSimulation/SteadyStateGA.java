@@ -0,0 +1,217 @@
+package vcreature.mainSimulation;
+
+import vcreature.creatureUtil.CreatureConstants;
+import vcreature.creatureUtil.DNA;
+import vcreature.hillClimbing.HillClimbing;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Steady state GA. There are no generations to wait for: as soon as a worker has a fitness for a strand's creature
+ * that one strand is moved on and handed straight back to be simulated, so a slow creature only holds up its own
+ * strand and the workers never sit idle at a barrier.
+ *
+ * Moving a strand on means one of two things. If its best is down in the bottom CULL_PERCENT of the population or it
+ * has never scored anything (and crossover is on) it is replaced by a child of two tournament winners, otherwise it
+ * gets hill climbed like it would at the end of a generation. Ties with the worst survivor get climbed, or a
+ * converged population would do nothing but cross over copies of itself. Both happen under one lock, they're tiny
+ * next to a simulation.
+ *
+ * For the stats a generation is population size evaluations and an epoch is population size children.
+ */
+public class SteadyStateGA implements BackgroundGA {
+  private final Population population;
+  private final HillClimbing hillClimbing;
+  private final GeneticOperators operators;
+  private final FitnessCache fitnessCache;
+  private final EarlyStopPolicy.FitnessBound fitnessBound;
+  private final Supplier<FitnessEvaluator> makeEvaluator;
+  private final boolean doing_crossover;
+  private final Thread[] workers;
+  // Strands that are ready to be simulated, every other strand is being simulated by a worker
+  private final ArrayDeque<Integer> waiting = new ArrayDeque<>();
+  private volatile boolean running = false;
+
+  private long evaluations = 0;
+  private long simulations = 0;
+  private int children = 0;
+
+  /**
+   * @param population population to evolve, only touched by the workers from now on
+   * @param thread_count number of workers
+   * @param operators used for the crossovers, only ever called under the lock
+   * @param makeEvaluator makes an evaluator for each worker, on the worker's thread since jBullet hands out its
+   *                      solver pools per thread
+   * @param fitnessCache cache of fitnesses, or null
+   * @param fitnessBound the below survivors policy the evaluators use, or null if they don't use one
+   * @param rand random numbers for the hill climbing
+   * @param doing_crossover false to only hill climb
+   */
+  public SteadyStateGA(Population population, int thread_count, GeneticOperators operators,
+                       Supplier<FitnessEvaluator> makeEvaluator, FitnessCache fitnessCache,
+                       EarlyStopPolicy.FitnessBound fitnessBound, Random rand, boolean doing_crossover) {
+    this.population = population;
+    this.hillClimbing = new HillClimbing(population, rand);
+    this.operators = operators;
+    this.makeEvaluator = makeEvaluator;
+    this.fitnessCache = fitnessCache;
+    this.fitnessBound = fitnessBound;
+    this.doing_crossover = doing_crossover && population.size() >= 2;
+    this.workers = new Thread[Math.max(1, thread_count)];
+    for (int i = 0; i < population.size(); i++) {
+      waiting.add(i);
+    }
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread(this::work, "Steady State " + i);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    synchronized (this) {
+      notifyAll();
+    }
+    for (Thread worker : workers) {
+      if (worker == null) continue;
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void work() {
+    try {
+      FitnessEvaluator evaluator = makeEvaluator.get();
+      int index;
+      DNA dna;
+      synchronized (this) {
+        index = nextStrand();
+        dna = index < 0 ? null : population.get(index).getLast();
+      }
+      while (dna != null) {
+        float fitness = evaluate(evaluator, dna);
+        synchronized (this) {
+          finish(index, fitness);
+          index = nextStrand();
+          dna = index < 0 ? null : population.get(index).getLast();
+        }
+      }
+    } catch (RuntimeException e) {
+      System.err.println(Thread.currentThread().getName() + " stopped: " + e);
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Wait for a strand that isn't being simulated, only happens with more workers than strands
+   * @return index of the strand, or -1 once stopped
+   */
+  private int nextStrand() {
+    while (running && waiting.isEmpty()) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+    }
+    return running ? waiting.poll() : -1;
+  }
+
+  private float evaluate(FitnessEvaluator evaluator, DNA dna) {
+    String key = fitnessCache == null ? null : dna.getContentHash();
+    Float fitness = key == null ? null : fitnessCache.get(key);
+    if (fitness == null) {
+      Evaluation result = evaluator.simulate(dna);
+      fitness = result.getFitness();
+      synchronized (this) {
+        simulations++;
+      }
+      if (key != null && result.isCacheable()) {
+        fitnessCache.put(key, fitness);
+      }
+    }
+    return fitness;
+  }
+
+  /**
+   * Store the fitness and move the strand on, by crossover if it's one of the worst and hill climbing if it isn't
+   */
+  private void finish(int index, float fitness) {
+    Population.Strand strand = population.get(index);
+    strand.updateLastFitness(fitness);
+    evaluations++;
+    float survivor = worstSurvivor();
+    if (fitnessBound != null) {
+      fitnessBound.setSurvivorFitness(survivor);
+    }
+
+    float best = strand.getBest().getFitness();
+    if (doing_crossover && (best < survivor || best <= 0)) {
+      DNA child = operators.tournamentCrossover(population.getBestDNAs())[0];
+      Population.Strand replacement = population.new Strand();
+      replacement.add(child);
+      population.getStrands().set(index, replacement);
+      children++;
+    } else {
+      hillClimbing.climb(strand);
+    }
+    waiting.add(index);
+    notify();
+  }
+
+  /**
+   * Best fitness at the CULL_PERCENT quantile of the strands' bests, anything below it gets replaced
+   */
+  private float worstSurvivor() {
+    float[] best = new float[population.size()];
+    for (int i = 0; i < best.length; i++) {
+      best[i] = population.get(i).getBest().getFitness();
+    }
+    Arrays.sort(best);
+    return best[Math.min((int) (best.length * CreatureConstants.CULL_PERCENT), best.length - 1)];
+  }
+
+  @Override
+  public synchronized int getGenerations() {
+    return (int) (evaluations / population.size());
+  }
+
+  @Override
+  public synchronized int getEpochs() {
+    return children / population.size();
+  }
+
+  @Override
+  public synchronized long getEvaluations() {
+    return simulations;
+  }
+
+  @Override
+  public synchronized Population snapshot() {
+    Population snapshot = new Population();
+    for (DNA dna : population.getBestDNAs()) {
+      DNA copy = new DNA(dna);
+      copy.storeFitness(dna.getFitness());
+      snapshot.add(copy);
+    }
+    if (!snapshot.isEmpty()) {
+      snapshot.updateFitnessCache();
+    }
+    return snapshot;
+  }
+}
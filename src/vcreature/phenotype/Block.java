@@ -102,6 +102,19 @@ public class Block
    *     Quaternion and not reused for other data.
    */
   public Block(PhysicsSpace physicsSpace, Node rootNode, int id, Vector3f center, Vector3f size, Quaternion rotation) 
+  { 
+    this(physicsSpace, rootNode, id, center, size, rotation, null);
+  }
+  
+  
+  /**
+   * Creates a box, reusing the geometry and rigid body of an old block of
+   * the same size from the pool if there is one.
+   * @see #Block(PhysicsSpace, Node, int, Vector3f, Vector3f, Quaternion)
+   * @param pool where to look for an old block, or null to always make a new one.
+   */
+  public Block(PhysicsSpace physicsSpace, Node rootNode, int id, Vector3f center, Vector3f size, Quaternion rotation,
+               BlockPool pool) 
   { 
     if (size.x < 0.5f || size.y < 0.5f || size.z < 0.5f) 
     { throw new IllegalArgumentException("No dimension may be less than 0.5 from block's center: ("+vectorToStr(size));
@@ -123,19 +136,39 @@ public class Block
     sizeZ = size.z*2;
 
     
-    //Creates a box that has a center of 0,0,0 and extends in the out from 
-    //the center by the given amount in each direction. 
-    // So, for example, a box with extent of 0.5 would be the unit cube.
-    Box box = new Box(size.x, size.y, size.z);
-    geometry = new Geometry("Box", box);
-    geometry.setMaterial(MATERIAL_GRAY);
-    rootNode.attachChild(geometry);
-    geometry.setShadowMode(ShadowMode.Cast);
-    geometry.rotate(rotation);
-    geometry.move(startCenter);
-    
-    physicsControl = new RigidBodyControl(getMass());
-    geometry.addControl(physicsControl);
+    Geometry recycled = (pool == null) ? null : pool.take(size);
+    if (recycled != null)
+    {
+      //Same size so same shape and mass, just put it back to how a new one starts
+      geometry = recycled;
+      geometry.setMaterial(MATERIAL_GRAY);
+      rootNode.attachChild(geometry);
+      geometry.setLocalRotation(rotation);
+      geometry.setLocalTranslation(startCenter);
+      
+      physicsControl = geometry.getControl(RigidBodyControl.class);
+      physicsControl.setLinearVelocity(Vector3f.ZERO);
+      physicsControl.setAngularVelocity(Vector3f.ZERO);
+      physicsControl.clearForces();
+      physicsControl.activate();
+    }
+    else
+    {
+      //Creates a box that has a center of 0,0,0 and extends in the out from 
+      //the center by the given amount in each direction. 
+      // So, for example, a box with extent of 0.5 would be the unit cube.
+      Box box = new Box(size.x, size.y, size.z);
+      geometry = new Geometry("Box", box);
+      geometry.setMaterial(MATERIAL_GRAY);
+      rootNode.attachChild(geometry);
+      geometry.setShadowMode(ShadowMode.Cast);
+      geometry.rotate(rotation);
+      geometry.move(startCenter);
+      
+      //Blocks of the same size all share one collision shape
+      physicsControl = new RigidBodyControl(BoxShapeCache.get(size), getMass());
+      geometry.addControl(physicsControl);
+    }
     
     
     physicsControl.setPhysicsRotation(rotation);
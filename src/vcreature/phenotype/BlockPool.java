@@ -0,0 +1,113 @@
+package vcreature.phenotype;
+
+import com.jme3.bullet.control.RigidBodyControl;
+import com.jme3.bullet.joints.HingeJoint;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the geometries and rigid bodies of removed blocks around so the next
+ * creature can reuse them instead of making a new Box, Geometry,
+ * RigidBodyControl and collision shape for every block.<br><br>
+ *
+ * Blocks are only reused for a block of exactly the same size, so the
+ * collision shape, mass and inertia are the same as a new one would have and
+ * a reused block simulates exactly like a new one. Mutation only changes a
+ * few block sizes at a time, so most of them come back around.<br><br>
+ *
+ * Joints are not pooled. A HingeJoint is tied to the two bodies and pivots it
+ * was made with, and is cheap next to a block anyway.<br><br>
+ *
+ * Not thread safe, use one per physics world (or thread).
+ */
+public class BlockPool
+{
+  /**
+   * Most blocks a pool keeps around. When it's full the sizes that haven't
+   * been asked for in the longest time get thrown out.
+   */
+  public static final int MAX_FREE_BLOCKS = 1000;
+
+  //access order, so the first entry is the size used longest ago
+  private final LinkedHashMap<HalfSizeKey, ArrayDeque<Geometry>> freeBlocks = new LinkedHashMap<>(64, 0.75f, true);
+  private int freeCount = 0;
+  private int reused = 0;
+  private int made = 0;
+
+  /**
+   * Get a block's geometry, with its RigidBodyControl, that was made for the
+   * given size.
+   * @param halfSize   half size of the block.
+   * @return           geometry of an old block, or null if there aren't any.
+   */
+  Geometry take(Vector3f halfSize)
+  {
+    ArrayDeque<Geometry> blocks = freeBlocks.get(new HalfSizeKey(halfSize));
+    if (blocks == null || blocks.isEmpty())
+    { made++;
+      return null;
+    }
+    freeCount--;
+    reused++;
+    return blocks.pop();
+  }
+
+  /**
+   * Give back a block that has been taken out of the physics space and the
+   * scene. Its joint to its parent is let go of, so the pooled bodies don't
+   * keep old joints alive.
+   * @param block     removed block.
+   */
+  void recycle(Block block)
+  {
+    HingeJoint joint = block.getJoint();
+    if (joint != null)
+    { joint.destroy();
+    }
+    RigidBodyControl control = block.getPhysicsControl();
+    if (!control.getJoints().isEmpty())
+    { //something else is still joined to it, leave it for the GC
+      return;
+    }
+    HalfSizeKey key = new HalfSizeKey(block.getSizeX() / 2, block.getSizeY() / 2, block.getSize() / 2);
+    ArrayDeque<Geometry> blocks = freeBlocks.get(key);
+    if (blocks == null)
+    { blocks = new ArrayDeque<>();
+      freeBlocks.put(key, blocks);
+    }
+    blocks.push(block.getGeometry());
+    freeCount++;
+    trim();
+  }
+
+  /**
+   * Throw out the least recently used sizes until the pool fits.
+   */
+  private void trim()
+  {
+    Iterator<Map.Entry<HalfSizeKey, ArrayDeque<Geometry>>> oldest = freeBlocks.entrySet().iterator();
+    while (freeCount > MAX_FREE_BLOCKS && oldest.hasNext())
+    {
+      freeCount -= oldest.next().getValue().size();
+      oldest.remove();
+    }
+  }
+
+  /**
+   * @return number of blocks waiting to be reused.
+   */
+  public int getFreeCount() { return freeCount; }
+
+  /**
+   * @return fraction of blocks asked for that were reused.
+   */
+  public float getReuseRate()
+  {
+    if (reused + made == 0) return 0;
+    return (float) reused / (reused + made);
+  }
+}
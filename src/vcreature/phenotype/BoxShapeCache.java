@@ -0,0 +1,88 @@
+package vcreature.phenotype;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.math.Vector3f;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One BoxCollisionShape for each block size, shared by every block of that
+ * size in every physics world. A box shape is never changed after it is made,
+ * so bullet is fine with any number of bodies (in any number of worlds and
+ * threads) using the same one.<br><br>
+ *
+ * The cache only holds weak references. A shape stays around as long as some
+ * block (or pooled block) still uses it, then it gets cleaned out.
+ */
+final class BoxShapeCache
+{
+  private static final ConcurrentHashMap<HalfSizeKey, ShapeReference> shapes = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<BoxCollisionShape> collected = new ReferenceQueue<>();
+
+  private BoxShapeCache()
+  {
+  }
+
+  /**
+   * Get the shape for a block, the same one RigidBodyControl would make from
+   * the block's Box mesh.
+   * @param halfSize   half size of the block.
+   * @return           shared shape for that size.
+   */
+  static BoxCollisionShape get(Vector3f halfSize)
+  {
+    removeCollected();
+    HalfSizeKey key = new HalfSizeKey(halfSize);
+    while (true)
+    {
+      ShapeReference reference = shapes.get(key);
+      BoxCollisionShape shape = (reference == null) ? null : reference.get();
+      if (shape != null)
+      { return shape;
+      }
+      shape = new BoxCollisionShape(new Vector3f(halfSize));
+      ShapeReference newReference = new ShapeReference(key, shape);
+      boolean added = (reference == null) ? shapes.putIfAbsent(key, newReference) == null
+                                          : shapes.replace(key, reference, newReference);
+      if (added)
+      { return shape;
+      }
+      //another thread got there first, go use theirs
+    }
+  }
+
+  /**
+   * @return number of sizes with a shape in the cache.
+   */
+  static int size()
+  {
+    removeCollected();
+    return shapes.size();
+  }
+
+  /**
+   * Take out the entries for shapes nothing uses any more.
+   */
+  private static void removeCollected()
+  {
+    Reference<? extends BoxCollisionShape> reference;
+    while ((reference = collected.poll()) != null)
+    {
+      ShapeReference shapeReference = (ShapeReference) reference;
+      shapes.remove(shapeReference.key, shapeReference);
+    }
+  }
+
+  private static class ShapeReference extends WeakReference<BoxCollisionShape>
+  {
+    private final HalfSizeKey key;
+
+    ShapeReference(HalfSizeKey key, BoxCollisionShape shape)
+    {
+      super(shape, collected);
+      this.key = key;
+    }
+  }
+}
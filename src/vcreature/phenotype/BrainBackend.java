@@ -0,0 +1,18 @@
+package vcreature.phenotype;
+
+/**
+ * The Enum BrainBackend.
+ * Which way Creature.updateBrain runs the neuron tables. They all send the
+ * same impulses, they only differ in speed.
+ */
+public enum BrainBackend
+{
+  /** Walk the Neuron objects every tick. **/
+  NEURONS,
+
+  /** Flatten the neuron tables into a BrainProgram when the simulation starts. **/
+  COMPILED,
+
+  /** Build a MethodHandle tree per joint when the simulation starts, with the constants folded in. **/
+  METHOD_HANDLES,
+}
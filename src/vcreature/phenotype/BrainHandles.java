@@ -0,0 +1,251 @@
+package vcreature.phenotype;
+
+import com.jme3.bullet.joints.HingeJoint;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+
+
+/**
+ * A creature's neuron tables turned into one MethodHandle tree per joint.<br><br>
+ *
+ * Each joint's rule table becomes a chain of guardWithTest handles that takes
+ * the simulation time and returns the impulse to send, or NaN if no neuron
+ * fired (a real impulse is never NaN since every half of a neuron is clamped).
+ * While the tree is being built:<br>
+ * 1) Halves of a neuron whose inputs are all constants are worked out once and
+ * become constant handles.<br>
+ * 2) Constant inputs are bound straight into the operator, IDENTITY unary
+ * operators are left out, and TOUCH inputs and missing blocks become the
+ * constant 0.<br>
+ * 3) Rules whose trigger is constant either disappear (never fire) or end the
+ * chain (always fire, so nothing after them can run).<br><br>
+ *
+ * Gives exactly the same impulses as running the Neuron objects.
+ */
+class BrainHandles implements CompiledBrain
+{
+  private static final MethodType UNARY  = MethodType.methodType(float.class, float.class);
+  private static final MethodType BINARY = MethodType.methodType(float.class, float.class, float.class);
+
+  private static final MethodHandle[] OPERATORS = new MethodHandle[EnumOperator.SIZE];
+  private static final MethodHandle CLAMP;
+  private static final MethodHandle GREATER;
+  private static final MethodHandle JOINT_ANGLE;
+  private static final MethodHandle HEIGHT;
+  private static final MethodHandle NOT_FIRED;
+
+  static
+  {
+    try
+    {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      for (EnumOperator op : EnumOperator.values())
+      {
+        OPERATORS[BrainProgram.opcodeOf(op)] = lookup.findStatic(BrainHandles.class, op.name().toLowerCase(),
+            op.isUnary() ? UNARY : BINARY);
+      }
+      CLAMP       = lookup.findStatic(BrainHandles.class, "clamp", UNARY);
+      GREATER     = lookup.findStatic(BrainHandles.class, "greater",
+                      MethodType.methodType(boolean.class, float.class, float.class));
+      JOINT_ANGLE = lookup.findVirtual(Block.class, "getJointAngle", MethodType.methodType(float.class));
+      HEIGHT      = lookup.findVirtual(Block.class, "getHeight", MethodType.methodType(float.class));
+      NOT_FIRED   = constant(Float.NaN);
+    }
+    catch (NoSuchMethodException | IllegalAccessException e)
+    { throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Block[] effectors;
+  private final HingeJoint[] joints;
+  private final float[] maxImpulse;
+  private final MethodHandle[] ruleTables; //(float time)float impulse or NaN
+
+  /**
+   * Compile the neuron tables of a finished body
+   * @param bodyList blocks of the creature, in id order.
+   */
+  BrainHandles(ArrayList<Block> bodyList)
+  {
+    ArrayList<Block> effectorList = new ArrayList<>();
+    ArrayList<MethodHandle> tableList = new ArrayList<>();
+    for (Block block : bodyList)
+    {
+      if (block.getJoint() == null) continue;
+      MethodHandle table = compileRuleTable(block.getNeuronTable(), bodyList);
+      if (table == NOT_FIRED) continue; //nothing in here can ever fire
+      effectorList.add(block);
+      tableList.add(table);
+    }
+
+    effectors  = effectorList.toArray(new Block[effectorList.size()]);
+    ruleTables = tableList.toArray(new MethodHandle[tableList.size()]);
+    joints     = new HingeJoint[effectors.length];
+    maxImpulse = new float[effectors.length];
+    for (int i = 0; i < effectors.length; i++)
+    {
+      joints[i]     = effectors[i].getJoint();
+      maxImpulse[i] = effectors[i].getJointMaxImpulse();
+    }
+  }
+
+
+  @Override
+  public boolean run(float elapsedSimulationTime)
+  {
+    boolean fired = false;
+    try
+    {
+      for (int i = 0; i < ruleTables.length; i++)
+      {
+        float impulse = (float) ruleTables[i].invokeExact(elapsedSimulationTime);
+        if (impulse == impulse) //not NaN
+        {
+          BrainProgram.sendImpulse(effectors[i], joints[i], maxImpulse[i], impulse);
+          fired = true;
+        }
+      }
+    }
+    catch (Throwable t)
+    { throw new IllegalStateException("Compiled brain failed", t);
+    }
+    return fired;
+  }
+
+
+  /**
+   * Build the chain for one joint back to front, so each rule falls through
+   * to the rules after it.
+   */
+  private static MethodHandle compileRuleTable(ArrayList<Neuron> neuronTable, ArrayList<Block> body)
+  {
+    MethodHandle chain = NOT_FIRED;
+    for (int n = neuronTable.size() - 1; n >= 0; n--)
+    {
+      Neuron neuron = neuronTable.get(n);
+      Input y = half(neuron, Neuron.FIRST_HALF, input(neuron, Neuron.A, body), input(neuron, Neuron.B, body));
+      Input c = input(neuron, Neuron.C, body);
+      Input impulse = half(neuron, Neuron.SECOND_HALF, input(neuron, Neuron.D, body),
+                           input(neuron, Neuron.E, body));
+
+      if (y.handle == null && c.handle == null)
+      {
+        if (y.value > c.value) chain = impulse.asHandle();
+        //else this rule can never fire, the chain just skips it
+        continue;
+      }
+      MethodHandle test = bind(GREATER, y, c);
+      chain = MethodHandles.guardWithTest(test, impulse.asHandle(), chain);
+    }
+    return chain;
+  }
+
+
+  private static Input input(Neuron neuron, int i, ArrayList<Block> body)
+  {
+    EnumNeuronInput type = neuron.getInputType(i);
+    int idx = neuron.getBlockIdx(i);
+    boolean validBlock = idx >= 0 && idx < body.size();
+    if (type == EnumNeuronInput.CONSTANT) return new Input(neuron.getInputValue(i));
+    if (type == EnumNeuronInput.TIME) return new Input(MethodHandles.identity(float.class));
+    if (type == EnumNeuronInput.JOINT && validBlock)
+    { return new Input(MethodHandles.dropArguments(JOINT_ANGLE.bindTo(body.get(idx)), 0, float.class));
+    }
+    if (type == EnumNeuronInput.HEIGHT && validBlock)
+    { return new Input(MethodHandles.dropArguments(HEIGHT.bindTo(body.get(idx)), 0, float.class));
+    }
+    return new Input(0); //TOUCH or a missing block, always 0
+  }
+
+
+  private static Input half(Neuron neuron, int half, Input a, Input b)
+  {
+    int binary = BrainProgram.opcodeOf(neuron.getOp(half));
+    int unary  = BrainProgram.opcodeOf(neuron.getOp(half + 1));
+    if (a.handle == null && b.handle == null)
+    { return new Input(BrainProgram.half(binary, unary, a.value, b.value));
+    }
+    MethodHandle x = MethodHandles.filterReturnValue(bind(OPERATORS[binary], a, b), CLAMP);
+    if (unary != BrainProgram.OP_IDENTITY)
+    { x = MethodHandles.filterReturnValue(MethodHandles.filterReturnValue(x, OPERATORS[unary]), CLAMP);
+    }
+    return new Input(x);
+  }
+
+
+  /**
+   * Feed two inputs into a two argument handle, giving a handle that only
+   * takes the time. Constants get bound in, everything else gets the time.
+   */
+  private static MethodHandle bind(MethodHandle op, Input a, Input b)
+  {
+    MethodHandle h = b.handle == null ? MethodHandles.insertArguments(op, 1, b.value)
+                                      : MethodHandles.filterArguments(op, 1, b.handle);
+    h = a.handle == null ? MethodHandles.insertArguments(h, 0, a.value)
+                         : MethodHandles.filterArguments(h, 0, a.handle);
+    if (h.type().parameterCount() == 2)
+    { h = MethodHandles.permuteArguments(h, h.type().dropParameterTypes(1, 2), 0, 0);
+    }
+    return h;
+  }
+
+
+  private static MethodHandle constant(float value)
+  {
+    return MethodHandles.dropArguments(MethodHandles.constant(float.class, value), 0, float.class);
+  }
+
+
+  /**
+   * Either a constant value (handle == null) or a (float time)float handle.
+   */
+  private static class Input
+  {
+    final MethodHandle handle;
+    final float value;
+
+    Input(float value)
+    { this.handle = null;
+      this.value = value;
+    }
+
+    Input(MethodHandle handle)
+    { this.handle = handle;
+      this.value = 0;
+    }
+
+    MethodHandle asHandle()
+    { return handle != null ? handle : constant(value);
+    }
+  }
+
+
+  //=========== Operators, looked up by name from EnumOperator ===============
+  private static float clamp(float x)
+  { return (Float.isNaN(x) || Float.isInfinite(x)) ? 0.0f : x;
+  }
+
+  private static boolean greater(float y, float c) {return y > c;}
+
+  private static float add(float a, float b)      {return a+b;}
+  private static float subtract(float a, float b) {return a-b;}
+  private static float multiply(float a, float b) {return a*b;}
+  private static float power(float a, float b)    {return (float)Math.pow(a,b);}
+  private static float max(float a, float b)      {return Math.max(a,b);}
+  private static float min(float a, float b)      {return Math.min(a,b);}
+  private static float arctan2(float a, float b)  {return (float)Math.atan2(a,b);}
+
+  private static float abs(float x)      {return Math.abs(x);}
+  private static float identity(float x) {return x;}
+  private static float sin(float x)      {return (float)Math.sin(x);}
+  private static float sign(float x)     {return Math.signum(x);}
+  private static float negative(float x) {return -x;}
+  private static float exp(float x)      {return (float)Math.exp(x);}
+  private static float log(float x)
+  { if (x<=0) x = 0.0f;
+    return (float)Math.log(x);
+  }
+}
@@ -0,0 +1,246 @@
+package vcreature.phenotype;
+
+import com.jme3.bullet.joints.HingeJoint;
+
+import java.util.ArrayList;
+
+
+/**
+ * A creature's neuron tables flattened into primitive arrays so that running
+ * the brain every physics tick is a tight switch over int opcodes with no
+ * enum comparisons and no allocations.<br><br>
+ *
+ * Gives exactly the same impulses as running the Neuron objects through
+ * Creature.brainNeuronFire and Creature.sendNeuronImpulse.
+ */
+class BrainProgram implements CompiledBrain
+{
+  //Input kinds. TOUCH inputs and block indices that don't exist always read
+  //  as 0, so they get compiled down to IN_CONSTANT.
+  static final int IN_CONSTANT = 0;
+  static final int IN_TIME     = 1;
+  static final int IN_JOINT    = 2;
+  static final int IN_HEIGHT   = 3;
+
+  //Operator opcodes
+  static final int OP_ADD      = 0;
+  static final int OP_SUBTRACT = 1;
+  static final int OP_MULTIPLY = 2;
+  static final int OP_POWER    = 3;
+  static final int OP_MAX      = 4;
+  static final int OP_MIN      = 5;
+  static final int OP_ARCTAN2  = 6;
+  static final int OP_ABS      = 7;
+  static final int OP_IDENTITY = 8;
+  static final int OP_SIN      = 9;
+  static final int OP_SIGN     = 10;
+  static final int OP_NEGATIVE = 11;
+  static final int OP_LOG      = 12;
+  static final int OP_EXP      = 13;
+
+  private final Block[] body;
+
+  //One entry per block that has a joint to its parent (an effector)
+  private final Block[] effectors;
+  private final HingeJoint[] joints;
+  private final float[] maxImpulse;
+  private final int[] ruleStart; //rules of effector i are ruleStart[i] until ruleStart[i+1]
+
+  //One entry per input (TOTAL_INPUTS per rule) or per operator (TOTAL_OPERATIONS per rule)
+  private final int[] inputKind;
+  private final float[] inputConstant;
+  private final int[] inputBlock;
+  private final int[] opcode;
+
+  /**
+   * Compile the neuron tables of a finished body
+   * @param bodyList blocks of the creature, in id order.
+   */
+  BrainProgram(ArrayList<Block> bodyList)
+  {
+    body = bodyList.toArray(new Block[bodyList.size()]);
+
+    int effectorCount = 0;
+    int ruleCount = 0;
+    for (Block block : body)
+    {
+      if (block.getJoint() == null) continue;
+      effectorCount++;
+      ruleCount += block.getNeuronTable().size();
+    }
+
+    effectors     = new Block[effectorCount];
+    joints        = new HingeJoint[effectorCount];
+    maxImpulse    = new float[effectorCount];
+    ruleStart     = new int[effectorCount + 1];
+    inputKind     = new int[ruleCount * Neuron.TOTAL_INPUTS];
+    inputConstant = new float[ruleCount * Neuron.TOTAL_INPUTS];
+    inputBlock    = new int[ruleCount * Neuron.TOTAL_INPUTS];
+    opcode        = new int[ruleCount * Neuron.TOTAL_OPERATIONS];
+
+    int effector = 0;
+    int rule = 0;
+    for (Block block : body)
+    {
+      if (block.getJoint() == null) continue;
+      effectors[effector]  = block;
+      joints[effector]     = block.getJoint();
+      maxImpulse[effector] = block.getJointMaxImpulse();
+      ruleStart[effector]  = rule;
+      for (Neuron neuron : block.getNeuronTable())
+      {
+        for (int i = 0; i < Neuron.TOTAL_INPUTS; i++)
+        {
+          compileInput(neuron, i, rule * Neuron.TOTAL_INPUTS + i);
+        }
+        for (int i = 0; i < Neuron.TOTAL_OPERATIONS; i++)
+        {
+          opcode[rule * Neuron.TOTAL_OPERATIONS + i] = opcodeOf(neuron.getOp(i));
+        }
+        rule++;
+      }
+      effector++;
+    }
+    ruleStart[effectorCount] = rule;
+  }
+
+
+  private void compileInput(Neuron neuron, int i, int slot)
+  {
+    EnumNeuronInput type = neuron.getInputType(i);
+    int idx = neuron.getBlockIdx(i);
+    boolean validBlock = idx >= 0 && idx < body.length;
+    if (type == EnumNeuronInput.CONSTANT)
+    { inputKind[slot] = IN_CONSTANT;
+      inputConstant[slot] = neuron.getInputValue(i);
+    }
+    else if (type == EnumNeuronInput.TIME) inputKind[slot] = IN_TIME;
+    else if (type == EnumNeuronInput.JOINT && validBlock)
+    { inputKind[slot] = IN_JOINT;
+      inputBlock[slot] = idx;
+    }
+    else if (type == EnumNeuronInput.HEIGHT && validBlock)
+    { inputKind[slot] = IN_HEIGHT;
+      inputBlock[slot] = idx;
+    }
+    else inputKind[slot] = IN_CONSTANT; //TOUCH or a missing block, always 0
+  }
+
+
+  static int opcodeOf(EnumOperator op)
+  {
+    switch (op)
+    {
+      case ADD:      return OP_ADD;
+      case SUBTRACT: return OP_SUBTRACT;
+      case MULTIPLY: return OP_MULTIPLY;
+      case POWER:    return OP_POWER;
+      case MAX:      return OP_MAX;
+      case MIN:      return OP_MIN;
+      case ARCTAN2:  return OP_ARCTAN2;
+      case ABS:      return OP_ABS;
+      case SIN:      return OP_SIN;
+      case SIGN:     return OP_SIGN;
+      case NEGATIVE: return OP_NEGATIVE;
+      case LOG:      return OP_LOG;
+      case EXP:      return OP_EXP;
+      default:       return OP_IDENTITY;
+    }
+  }
+
+
+  @Override
+  public boolean run(float elapsedSimulationTime)
+  {
+    boolean fired = false;
+    for (int effector = 0; effector < effectors.length; effector++)
+    {
+      for (int rule = ruleStart[effector]; rule < ruleStart[effector + 1]; rule++)
+      {
+        int in = rule * Neuron.TOTAL_INPUTS;
+        int op = rule * Neuron.TOTAL_OPERATIONS;
+        float a = input(in + Neuron.A, elapsedSimulationTime);
+        float b = input(in + Neuron.B, elapsedSimulationTime);
+        float y = half(opcode[op], opcode[op + 1], a, b);
+        if (y > input(in + Neuron.C, elapsedSimulationTime))
+        {
+          float d = input(in + Neuron.D, elapsedSimulationTime);
+          float e = input(in + Neuron.E, elapsedSimulationTime);
+          sendImpulse(effectors[effector], joints[effector], maxImpulse[effector],
+                      half(opcode[op + 2], opcode[op + 3], d, e));
+          fired = true;
+          break;
+        }
+      }
+    }
+    return fired;
+  }
+
+
+  private float input(int slot, float elapsedSimulationTime)
+  {
+    switch (inputKind[slot])
+    {
+      case IN_TIME:   return elapsedSimulationTime;
+      case IN_JOINT:  return body[inputBlock[slot]].getJointAngle();
+      case IN_HEIGHT: return body[inputBlock[slot]].getHeight();
+      default:        return inputConstant[slot];
+    }
+  }
+
+
+  /**
+   * Send the output of a neuron to a joint, same as Creature.sendNeuronImpulse.
+   */
+  static void sendImpulse(Block block, HingeJoint joint, float maxImpulse, float impulse)
+  {
+    float speed = PhysicsConstants.JOINT_MAX_ANGULAR_SPEED;
+    if (impulse < 0)
+    {
+      speed   = -speed;
+      impulse = -impulse;
+    }
+    if (impulse > maxImpulse) impulse = maxImpulse;
+
+    joint.enableMotor(true, speed, impulse);
+    block.getPhysicsControl().activate();
+  }
+
+
+  /**
+   * One half of a neuron: binary operator then unary operator, with NaN and
+   * infinity replaced by 0 after each, the same as Neuron.getOutput.
+   */
+  static float half(int binary, int unary, float a, float b)
+  {
+    float x;
+    switch (binary)
+    {
+      case OP_ADD:      x = a+b; break;
+      case OP_SUBTRACT: x = a-b; break;
+      case OP_MULTIPLY: x = a*b; break;
+      case OP_POWER:    x = (float)Math.pow(a,b); break;
+      case OP_MIN:      x = Math.min(a,b); break;
+      case OP_MAX:      x = Math.max(a,b); break;
+      case OP_ARCTAN2:  x = (float)Math.atan2(a,b); break;
+      default:          x = 0.0f;
+    }
+    if (Float.isNaN(x) || Float.isInfinite(x)) x = 0.0f;
+
+    switch (unary)
+    {
+      case OP_ABS:      x = Math.abs(x); break;
+      case OP_SIN:      x = (float)Math.sin(x); break;
+      case OP_SIGN:     x = Math.signum(x); break;
+      case OP_NEGATIVE: x = -x; break;
+      case OP_LOG:
+        if (x<=0) x = 0.0f;
+        x = (float)Math.log(x);
+        break;
+      case OP_EXP:      x = (float)Math.exp(x); break;
+      default:          break;
+    }
+    if (Float.isNaN(x) || Float.isInfinite(x)) x = 0.0f;
+    return x;
+  }
+}
@@ -0,0 +1,16 @@
+package vcreature.phenotype;
+
+/**
+ * A creature's neuron tables turned into something faster to run than the
+ * Neuron objects. Built once the body is finished, since the neuron tables
+ * never change during a simulation.
+ */
+interface CompiledBrain
+{
+  /**
+   * Run every effector's rule table once, same as one call to Creature.updateBrain.
+   * @param elapsedSimulationTime value of the TIME input.
+   * @return true if any neuron sent an impulse.
+   */
+  boolean run(float elapsedSimulationTime);
+}
@@ -2,6 +2,7 @@ package vcreature.phenotype;
 
 import com.jme3.math.Vector3f;
 import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
 import com.jme3.scene.Node;
 import java.util.ArrayList;
 import com.jme3.bullet.joints.HingeJoint;
@@ -50,6 +51,13 @@ public class Creature
   private float maxHeightOfLowestPoint = 0;  //fitness
   
   private float elapsedSimulationTime;
+  private float timeOfLastImpulse = 0;
+  
+  private BlockPool blockPool;
+  private int collisionGroup = PhysicsCollisionObject.COLLISION_GROUP_01;
+  
+  private static BrainBackend brainBackend = BrainBackend.COMPILED;
+  private CompiledBrain compiledBrain;
   
   /**
    *
@@ -72,6 +80,28 @@ public class Creature
     this.jMonkeyRootNode = jMonkeyRootNode;
   }
   
+  /**
+   * Build this creature's blocks out of old ones from the pool where it can,
+   * and give them back to it on remove(). Has to be set before the root is added.
+   * @param blockPool pool shared by the creatures of one physics world, or null for none.
+   */
+  public void setBlockPool(BlockPool blockPool)
+  {
+    this.blockPool = blockPool;
+  }
+  
+  /**
+   * Put this creature's blocks in their own collision group, so they collide
+   * with each other and with the ground (group 1) but not with any other
+   * creature in the same physics space that is in a different group. 
+   * Has to be set before the root is added.
+   * @param collisionGroup one of the PhysicsCollisionObject.COLLISION_GROUP_ flags.
+   */
+  public void setCollisionGroup(int collisionGroup)
+  {
+    this.collisionGroup = collisionGroup;
+  }
+  
   /**
    *
    * @param rootCenter
@@ -106,7 +136,9 @@ public class Creature
     
     Quaternion rotation = new Quaternion(eulerAngles);
     
-    Block root = new Block(physicsSpace, jMonkeyRootNode, body.size(), rootCenter, rootHalfSize, rotation);
+    Block root = new Block(physicsSpace, jMonkeyRootNode, body.size(), rootCenter, rootHalfSize, rotation,
+                           blockPool);
+    setCollisionGroup(root);
     
     body.add(root);
 
@@ -210,7 +242,8 @@ public class Creature
     
     //print("center=",centerB);
     
-    Block block = new Block(physicsSpace, jMonkeyRootNode, body.size(), centerB, halfsize, rotationB);
+    Block block = new Block(physicsSpace, jMonkeyRootNode, body.size(), centerB, halfsize, rotationB, blockPool);
+    setCollisionGroup(block);
     body.add(block);
     
     
@@ -279,6 +312,20 @@ public class Creature
   
 
     
+  /**
+   * Put a new block in this creature's collision group. Done for every block,
+   * even in the default group, since a block from the pool could still be in
+   * some other creature's group.
+   * @param block
+   */
+  private void setCollisionGroup(Block block)
+  {
+    RigidBodyControl control = block.getPhysicsControl();
+    control.setCollisionGroup(collisionGroup);
+    control.setCollideWithGroups(collisionGroup | PhysicsCollisionObject.COLLISION_GROUP_01);
+  }
+  
+  
    /**
    * This method should only be called by itself or remove() 
    * to remove ALL blocks from the creature.
@@ -299,6 +346,7 @@ public class Creature
     geometry.removeFromParent();
     
     body.remove(block);
+    if (blockPool != null) blockPool.recycle(block);
   }
   
   /**
@@ -402,10 +450,20 @@ public class Creature
       maxHeightOfLowestPoint = 0;
       //System.out.println("Creature.updateBrain() start");
       this.elapsedSimulationTime = elapsedSimulationTime;
+      //The body and neuron tables are finished by now and won't change
+      compiledBrain = null;
+      if (brainBackend == BrainBackend.COMPILED) compiledBrain = new BrainProgram(body);
+      else if (brainBackend == BrainBackend.METHOD_HANDLES) compiledBrain = new BrainHandles(body);
       return 0;
     }
     
     this.elapsedSimulationTime = elapsedSimulationTime;
+    if (compiledBrain != null)
+    {
+      if (compiledBrain.run(elapsedSimulationTime)) timeOfLastImpulse = elapsedSimulationTime;
+      return updateFitness();
+    }
+    
     for (Block block : body)
     {
       HingeJoint joint = block.getJoint();
@@ -465,6 +523,53 @@ public class Creature
   }
   
   
+  /**
+   * Sets how every Creature runs its neuron tables from the next simulation
+   * start on. Should be set before any simulations are running.
+   * @param backend
+   */
+  public static void setBrainBackend(BrainBackend backend)
+  {
+    brainBackend = backend;
+  }
+  
+  
+  /**
+   *
+   * @return the way neuron tables are being run.
+   */
+  public static BrainBackend getBrainBackend()
+  {
+    return brainBackend;
+  }
+  
+  
+  /**
+   *
+   * @return the simulation time at which a neuron last sent an impulse to one
+   * of the joints, 0 if none have fired yet.
+   */
+  public float getTimeOfLastImpulse()
+  {
+    return timeOfLastImpulse;
+  }
+  
+  
+  /**
+   *
+   * @return true if every block has been put to sleep by the physics engine,
+   * meaning nothing will move until a neuron fires again.
+   */
+  public boolean isAsleep()
+  {
+    for (Block block : body)
+    {
+      if (block.getPhysicsControl().isActive()) return false;
+    }
+    return true;
+  }
+  
+  
   /**
    *
    * @param neuron
@@ -504,6 +609,7 @@ public class Creature
     
     joint.enableMotor(true, speed, impulse);
     block.getPhysicsControl().activate();
+    timeOfLastImpulse = elapsedSimulationTime;
   
   }
   
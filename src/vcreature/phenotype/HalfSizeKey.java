@@ -0,0 +1,39 @@
+package vcreature.phenotype;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * Exact half size of a block, for looking blocks up by size. Rounding the
+ * size would let more blocks share, but then the creature would not be the
+ * one its DNA describes.
+ */
+final class HalfSizeKey
+{
+  private final int x, y, z;
+
+  HalfSizeKey(Vector3f halfSize)
+  {
+    this(halfSize.x, halfSize.y, halfSize.z);
+  }
+
+  HalfSizeKey(float x, float y, float z)
+  {
+    this.x = Float.floatToIntBits(x);
+    this.y = Float.floatToIntBits(y);
+    this.z = Float.floatToIntBits(z);
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if (!(o instanceof HalfSizeKey)) return false;
+    HalfSizeKey other = (HalfSizeKey) o;
+    return x == other.x && y == other.y && z == other.z;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return (x * 31 + y) * 31 + z;
+  }
+}
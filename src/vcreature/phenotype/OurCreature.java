@@ -75,6 +75,23 @@ public class OurCreature extends Creature
     this.dna.initializeCreature(this);
   }
 
+  /**
+   * Constructor that creates creature with DNA object, out of old blocks from
+   * the pool where it can.
+   * @param physWorld       the physics world this belongs to.
+   * @param visWorld        the scene this belongs to.
+   * @param dna             DNA to build the creature from.
+   * @param blockPool       pool to take blocks from and give them back to on
+   *                        remove().
+   */
+  public OurCreature(PhysicsSpace physWorld, Node visWorld, DNA dna, BlockPool blockPool)
+  {
+    this(physWorld, visWorld);
+    setBlockPool(blockPool);
+    this.dna = dna;
+    this.dna.initializeCreature(this);
+  }
+
   /**
    * Contstructor for testing, creates flappy bird.
    * TODO remove when done testing.
@@ -193,7 +210,8 @@ public class OurCreature extends Creature
     blockProperties.add(makeBlockVectorArray(b, halfsize, axisA, axisA));
     blockAngles.add(Arrays.copyOf(eulerAngles, eulerAngles.length));
     bodyBlocks.add(b);
-    isValid = validateBlockPlacement(b);
+    //one bad block makes the whole creature invalid, not just the last one
+    isValid &= validateBlockPlacement(b);
     return b;
   }
 